@@ -0,0 +1,66 @@
+package com.example;
+
+/**
+ * Best-response dynamics, рассчитанная на дорогие запросы долей рынка. Вместо двух оценок
+ * прибыли за шаг тернарного поиска лучший ответ фирмы ищется сгущающейся сеткой:
+ * все {@link #CANDIDATES} цен сетки отправляются оракулу одной пачкой, затем сетка
+ * сужается вокруг лучшей цены. Для точности 1e-3 хватает 4-5 пачек на фирму.
+ */
+public final class BatchedBestResponse {
+
+    /** Число цен-кандидатов в одной пачке. */
+    static final int CANDIDATES = 32;
+
+    private BatchedBestResponse() {
+    }
+
+    /**
+     * Лучший ответ фирмы {@code firm} при фиксированных ценах конкурентов.
+     */
+    public static double bestResponse(ShareOracle oracle, int firm, double[] prices, double precision) {
+        double left = HotellingDuopoly.MIN_PRICE, right = HotellingDuopoly.MAX_PRICE;
+        double best = prices[firm];
+        while (true) {
+            double step = (right - left) / (CANDIDATES - 1);
+            double[][] batch = new double[CANDIDATES][];
+            for (int k = 0; k < CANDIDATES; k++) {
+                batch[k] = prices.clone();
+                batch[k][firm] = left + k * step;
+            }
+            int[][] shares = oracle.shares(batch);
+            double bestProfit = -1;
+            for (int k = 0; k < CANDIDATES; k++) {
+                double profit = batch[k][firm] * shares[k][firm];
+                if (profit > bestProfit) {
+                    bestProfit = profit;
+                    best = batch[k][firm];
+                }
+            }
+            if (step <= precision) {
+                return best;
+            }
+            left = Math.max(HotellingDuopoly.MIN_PRICE, best - step);
+            right = Math.min(HotellingDuopoly.MAX_PRICE, best + step);
+        }
+    }
+
+    /**
+     * Best-response dynamics с начальных цен; возвращает цены после сходимости
+     * (или после {@code maxIterations} раундов).
+     */
+    public static double[] solve(ShareOracle oracle, double[] startPrices, double tolPrice, int maxIterations) {
+        double[] prices = startPrices.clone();
+        for (int iter = 0; iter < maxIterations; iter++) {
+            boolean anyChange = false;
+            for (int i = 0; i < prices.length; i++) {
+                double bestPrice = bestResponse(oracle, i, prices, tolPrice / 2);
+                if (Math.abs(bestPrice - prices[i]) > tolPrice) {
+                    prices[i] = bestPrice;
+                    anyChange = true;
+                }
+            }
+            if (!anyChange) break;
+        }
+        return prices;
+    }
+}
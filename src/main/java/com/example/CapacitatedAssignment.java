@@ -0,0 +1,378 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Распределение жителей между фирмами с ограниченной мощностью. Без ограничений житель идёт
+ * к фирме с наименьшими издержками; с ограничениями это транспортная задача: минимизировать
+ * суммарные издержки p_j + t_j * d_rj при числе клиентов фирмы не больше её мощности. Житель,
+ * которому не хватило мест, остаётся необслуженным (фиктивный вариант с издержками
+ * {@link #setReservationCost отказа}).
+ * <p>
+ * Задача решается аукционом с ε-масштабированием: жители торгуются за места у фирм, поднимая
+ * теневую цену λ_j заполненной фирмы, пока каждый житель не окажется у фирмы с наименьшими
+ * p_j + t_j * d_rj + λ_j с точностью до ε. Задача сбалансирована: отказ - ещё один вариант
+ * на всех жителей, а свободные места занимают фиктивные участники с нулевыми издержками
+ * у любого варианта. Поэтому в конце все места заняты, и прямой аукцион с любых стартовых
+ * цен даёт ε-оптимум без обратных шагов и перезапусков. Жители с одинаковыми
+ * координатами торгуются одной группой; при большом числе жителей они группируются по ячейкам
+ * сетки (спрос агрегируется), иначе каждый житель - отдельная группа. Теневые цены одного
+ * решения можно передать стартом следующего (тёплый старт между итерациями по ценам);
+ * объект не хранит состояния между вызовами.
+ * <p>
+ * В отличие от модели без ограничений, житель с равными издержками у нескольких фирм
+ * достаётся одной из них, а не всем.
+ */
+public class CapacitatedAssignment {
+
+    /** С какого числа жителей спрос агрегируется по ячейкам сетки. */
+    static final int AGGREGATE_THRESHOLD = 1 << 16;
+
+    /** Число ячеек агрегации по каждой оси. */
+    static final int AGGREGATION_GRID = 128;
+
+    /** Точность последней фазы аукциона: издержки каждого жителя оптимальны с точностью до ε. */
+    static final double MIN_EPSILON = 1e-6;
+
+    /** Во сколько раз уменьшается ε между фазами. */
+    private static final double SCALING = 8;
+
+    /** Начальное ε тёплого старта в долях от разброса издержек. */
+    private static final double WARM_FRACTION = 1e-3;
+
+    private final double[] gx;
+    private final double[] gy;
+    private final int[] weight;
+    private final double[][] distances;
+    private final double[] t;
+    private final long[] capacity;
+    private final int residentCount;
+    private double reservationCost = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param capacity мощность каждой фирмы; {@code +inf} - без ограничения
+     * @throws IllegalArgumentException если мощность отрицательна или массивы фирм разной длины
+     */
+    public CapacitatedAssignment(double[] xy, double[] fx, double[] fy, double[] t, double[] capacity,
+                                 boolean manhattan) {
+        if (fy.length != fx.length || t.length != fx.length || capacity.length != fx.length) {
+            throw new IllegalArgumentException("Массивы фирм разной длины");
+        }
+        int n = xy.length / 2;
+        this.residentCount = n;
+        this.t = t.clone();
+        this.capacity = new long[fx.length];
+        for (int j = 0; j < fx.length; j++) {
+            if (!(capacity[j] >= 0)) {
+                throw new IllegalArgumentException("Мощность фирмы " + (j + 1) + " должна быть неотрицательной: " + capacity[j]);
+            }
+            this.capacity[j] = (long) Math.min(Math.floor(capacity[j]), n);
+        }
+        if (n <= AGGREGATE_THRESHOLD) {
+            gx = new double[n];
+            gy = new double[n];
+            weight = new int[n];
+            for (int r = 0; r < n; r++) {
+                gx[r] = xy[2 * r];
+                gy[r] = xy[2 * r + 1];
+                weight[r] = 1;
+            }
+        } else {
+            double[][] groups = aggregate(xy);
+            gx = groups[0];
+            gy = groups[1];
+            weight = Arrays.stream(groups[2]).mapToInt(w -> (int) w).toArray();
+        }
+        distances = IntStream.range(0, fx.length).parallel().mapToObj(j -> {
+            double[] d = new double[gx.length];
+            for (int g = 0; g < gx.length; g++) {
+                d[g] = MarketKernel.distance(gx[g], gy[g], fx[j], fy[j], manhattan);
+            }
+            return d;
+        }).toArray(double[][]::new);
+    }
+
+    /**
+     * Издержки отказа от покупки. По умолчанию бесконечны: житель остаётся необслуженным,
+     * только если мест у всех фирм не хватает.
+     */
+    public void setReservationCost(double reservationCost) {
+        this.reservationCost = reservationCost;
+    }
+
+    public int residentCount() {
+        return residentCount;
+    }
+
+    /** Число групп, на которых идёт аукцион. */
+    public int groupCount() {
+        return weight.length;
+    }
+
+    /**
+     * Распределение при ценах {@code prices}; аукцион стартует от теневых цен
+     * {@code startShadowPrices} ({@code null} - холодный старт с нулевых цен и крупного ε).
+     */
+    public Assignment assign(double[] prices, double[] startShadowPrices) {
+        int f = prices.length;
+        if (weight.length == 0) {
+            return new Assignment(new int[f], 0, new double[f], 0);
+        }
+        // варианты 0..f-1 - фирмы, вариант f - отказ; группа weight.length - фиктивные участники
+        double[][] cost = new double[f + 1][];
+        double minCost = Double.POSITIVE_INFINITY, maxCost = Double.NEGATIVE_INFINITY;
+        for (int j = 0; j < f; j++) {
+            cost[j] = new double[weight.length + 1];
+            for (int g = 0; g < weight.length; g++) {
+                cost[j][g] = prices[j] + t[j] * distances[j][g];
+                minCost = Math.min(minCost, cost[j][g]);
+                maxCost = Math.max(maxCost, cost[j][g]);
+            }
+        }
+        // при бесконечных издержках отказа их заменяют издержки дороже любой цепочки пересадок
+        // через все фирмы: тогда отказ выгоден, только если мест не хватает
+        double reservation = Double.isInfinite(reservationCost)
+                ? maxCost + f * (maxCost - minCost) + 1 : reservationCost;
+        cost[f] = new double[weight.length + 1];
+        Arrays.fill(cost[f], 0, weight.length, reservation);
+        double range = Math.max(Math.max(reservation, maxCost) - Math.min(minCost, reservation), MIN_EPSILON);
+
+        double[] prices0 = new double[f + 1];
+        if (startShadowPrices != null) {
+            for (int j = 0; j < f; j++) {
+                prices0[j] = Math.min(range, Math.max(0, startShadowPrices[j]));
+            }
+        }
+        double eps = startShadowPrices == null ? range / SCALING : Math.max(MIN_EPSILON, range * WARM_FRACTION);
+        long bids = 0;
+        while (true) {
+            Auction auction = new Auction(cost, prices0);
+            auction.run(eps);
+            bids += auction.bids;
+            if (eps <= MIN_EPSILON) {
+                return auction.result(bids);
+            }
+            prices0 = auction.prices();
+            eps = Math.max(MIN_EPSILON, eps / SCALING);
+        }
+    }
+
+    /**
+     * Группы по ячейкам сетки: {x, y, число жителей}, координаты - средние по ячейке.
+     */
+    private static double[][] aggregate(double[] xy) {
+        int n = xy.length / 2;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < n; r++) {
+            minX = Math.min(minX, xy[2 * r]);
+            maxX = Math.max(maxX, xy[2 * r]);
+            minY = Math.min(minY, xy[2 * r + 1]);
+            maxY = Math.max(maxY, xy[2 * r + 1]);
+        }
+        int cells = AGGREGATION_GRID;
+        double sizeX = Math.max((maxX - minX) / cells, 1e-12), sizeY = Math.max((maxY - minY) / cells, 1e-12);
+        double[] sumX = new double[cells * cells], sumY = new double[cells * cells];
+        int[] count = new int[cells * cells];
+        for (int r = 0; r < n; r++) {
+            int cx = Math.min(cells - 1, (int) ((xy[2 * r] - minX) / sizeX));
+            int cy = Math.min(cells - 1, (int) ((xy[2 * r + 1] - minY) / sizeY));
+            int c = cy * cells + cx;
+            sumX[c] += xy[2 * r];
+            sumY[c] += xy[2 * r + 1];
+            count[c]++;
+        }
+        int groups = (int) Arrays.stream(count).filter(k -> k > 0).count();
+        double[][] result = new double[3][groups];
+        int g = 0;
+        for (int c = 0; c < count.length; c++) {
+            if (count[c] > 0) {
+                result[0][g] = sumX[c] / count[c];
+                result[1][g] = sumY[c] / count[c];
+                result[2][g++] = count[c];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Одна фаза аукциона с фиксированным ε. Места варианта хранятся кучей по цене, за которую они
+     * куплены; цена заполненного варианта - наименьшая цена места, незаполненного - стартовая.
+     * Группа торгуется за все свои нераспределённые места сразу: ставка поднимает цену до уровня,
+     * при котором лучший вариант сравнивается со вторым, плюс ε, и вытесняет самые дешёвые места.
+     */
+    private final class Auction {
+        private final double[][] cost;
+        private final double[] start;
+        private final long[] slotsOf;
+        private final long[] load;
+        private final List<PriorityQueue<Slot>> slots = new ArrayList<>();
+        private final long[] pending;
+        private final boolean[] queued;
+        private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        private final int dummy;
+        private long bids;
+
+        Auction(double[][] cost, double[] start) {
+            int options = cost.length;
+            this.cost = cost;
+            this.start = start;
+            this.slotsOf = new long[options];
+            this.load = new long[options];
+            this.dummy = weight.length;
+            this.pending = new long[dummy + 1];
+            this.queued = new boolean[dummy + 1];
+            long total = 0;
+            for (int k = 0; k < options; k++) {
+                slotsOf[k] = k < options - 1 ? capacity[k] : residentCount;
+                total += slotsOf[k];
+                slots.add(new PriorityQueue<>((a, b) -> Double.compare(a.price, b.price)));
+            }
+            for (int g = 0; g < dummy; g++) {
+                pending[g] = weight[g];
+            }
+            pending[dummy] = total - residentCount;
+        }
+
+        void run(double eps) {
+            for (int g = 0; g <= dummy; g++) {
+                enqueue(g);
+            }
+            while (!queue.isEmpty()) {
+                int g = queue.poll();
+                queued[g] = false;
+                if (pending[g] == 0) continue;
+                bids++;
+                int best = -1;
+                double bestValue = Double.POSITIVE_INFINITY, secondValue = Double.POSITIVE_INFINITY;
+                for (int k = 0; k < cost.length; k++) {
+                    if (slotsOf[k] == 0) continue;
+                    double value = cost[k][g] + price(k);
+                    if (best < 0 || value < bestValue) {
+                        secondValue = bestValue;
+                        bestValue = value;
+                        best = k;
+                    } else if (value < secondValue) {
+                        secondValue = value;
+                    }
+                }
+                // единственный вариант: мест в нём ровно столько, сколько участников
+                double gap = Double.isInfinite(secondValue) ? 0 : secondValue - bestValue;
+                // bid может вернуть группе g её же вытесненные места, поэтому вычитаем после вызова
+                long accepted = bid(best, g, pending[g], price(best) + gap + eps);
+                pending[g] -= accepted;
+                if (pending[g] > 0) {
+                    enqueue(g);
+                }
+            }
+        }
+
+        private double price(int k) {
+            return load[k] >= slotsOf[k] ? slots.get(k).peek().price : start[k];
+        }
+
+        /**
+         * Ставка группы g на {@code amount} мест варианта k по цене {@code bid}; возвращает число
+         * полученных мест. Вытесненные группы снова встают в очередь.
+         */
+        private long bid(int k, int g, long amount, double bid) {
+            PriorityQueue<Slot> heap = slots.get(k);
+            long accepted = Math.min(amount, slotsOf[k] - load[k]);
+            if (accepted > 0) {
+                heap.add(new Slot(g, accepted, bid));
+                load[k] += accepted;
+            }
+            while (accepted < amount && !heap.isEmpty() && heap.peek().price < bid) {
+                Slot cheapest = heap.peek();
+                long moved = Math.min(amount - accepted, cheapest.amount);
+                cheapest.amount -= moved;
+                if (cheapest.amount == 0) {
+                    heap.poll();
+                }
+                pending[cheapest.group] += moved;
+                enqueue(cheapest.group);
+                heap.add(new Slot(g, moved, bid));
+                accepted += moved;
+            }
+            return accepted;
+        }
+
+        private void enqueue(int g) {
+            if (!queued[g]) {
+                queued[g] = true;
+                queue.add(g);
+            }
+        }
+
+        /** Цены вариантов для старта следующей фазы. */
+        double[] prices() {
+            double[] prices = new double[cost.length];
+            for (int k = 0; k < cost.length; k++) {
+                prices[k] = slotsOf[k] == 0 ? 0 : price(k);
+            }
+            return prices;
+        }
+
+        /**
+         * Итог: жители у каждой фирмы и в отказе. Теневая цена фирмы отсчитывается от цены отказа
+         * и равна нулю, если у фирмы есть свободные места (их заняли фиктивные участники).
+         */
+        Assignment result(long totalBids) {
+            int f = cost.length - 1;
+            long[] real = new long[f + 1];
+            boolean[] free = new boolean[f + 1];
+            for (int k = 0; k <= f; k++) {
+                for (Slot slot : slots.get(k)) {
+                    if (slot.group == dummy) {
+                        free[k] = true;
+                    } else {
+                        real[k] += slot.amount;
+                    }
+                }
+            }
+            int[] served = new int[f];
+            double[] shadowPrices = new double[f];
+            double reference = slotsOf[f] == 0 ? 0 : price(f);
+            for (int j = 0; j < f; j++) {
+                served[j] = (int) real[j];
+                shadowPrices[j] = free[j] || slotsOf[j] == 0 ? 0 : Math.max(0, price(j) - reference);
+            }
+            return new Assignment(served, (int) real[f], shadowPrices, totalBids);
+        }
+    }
+
+    private static final class Slot {
+        final int group;
+        long amount;
+        final double price;
+
+        Slot(int group, long amount, double price) {
+            this.group = group;
+            this.amount = amount;
+            this.price = price;
+        }
+    }
+
+    /**
+     * Итог распределения: число обслуженных жителей у каждой фирмы, число необслуженных,
+     * теневые цены мощности λ (нулевые у незаполненных фирм) и число ставок аукциона.
+     */
+    public static class Assignment {
+        public final int[] served;
+        public final int unserved;
+        public final double[] shadowPrices;
+        public final long bids;
+
+        Assignment(int[] served, int unserved, double[] shadowPrices, long bids) {
+            this.served = served;
+            this.unserved = unserved;
+            this.shadowPrices = shadowPrices;
+            this.bids = bids;
+        }
+    }
+}
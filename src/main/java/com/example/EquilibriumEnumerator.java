@@ -0,0 +1,239 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Перечисление всех равновесий Nash в чистых стратегиях на сетке цен с шагом {@link #STEP}
+ * (той же, что у Exhaustive Search) для 2-4 фирм.
+ * <p>
+ * Доля фирмы при ценах конкурентов считается сразу для всех цен сетки: для каждого жителя
+ * двоичным поиском находится наибольшая цена, при которой фирма ещё входит в число лучших,
+ * а доли по ценам получаются суффиксными суммами. Таблицы долей кэшируются по ценам конкурентов.
+ * <p>
+ * Поиск ведётся ветвлением по областям цен. Доля фирмы не убывает по ценам конкурентов, поэтому
+ * в области цена фирмы отбрасывается, если её прибыль при верхних ценах конкурентов меньше
+ * прибыли, гарантированной какой-либо ценой сетки при нижних ценах конкурентов. Сужения
+ * повторяются, пока область не перестанет меняться; затем она делится пополам, и половины
+ * обрабатываются параллельно. Области, сжавшиеся в точку, - равновесия.
+ */
+public class EquilibriumEnumerator {
+
+    /** Шаг сетки цен. */
+    static final double STEP = 0.01;
+
+    /** Число цен сетки от {@link HotellingDuopoly#MIN_PRICE} до {@link HotellingDuopoly#MAX_PRICE}. */
+    static final int GRID_POINTS = (int) Math.round((HotellingDuopoly.MAX_PRICE - HotellingDuopoly.MIN_PRICE) / STEP) + 1;
+
+    /** Допуск сравнения прибылей. */
+    private static final double TOL_PROFIT = 1e-9;
+
+    /** Наибольшее число кэшированных таблиц долей (по 4 байта на цену сетки). */
+    private static final int MAX_TABLES = 1 << 12;
+
+    private final int residents;
+    private final double[][] distances;
+    private final double[] t;
+    private final double[] grid;
+    private final Map<Long, int[]> tables = new ConcurrentHashMap<>();
+    private final LongAdder boxes = new LongAdder();
+
+    public EquilibriumEnumerator(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan) {
+        if (fx.length < 2 || fx.length > 4) {
+            throw new IllegalArgumentException("Перечисление равновесий доступно для 2-4 фирм, получено " + fx.length);
+        }
+        this.residents = xy.length / 2;
+        this.t = t.clone();
+        this.distances = new double[fx.length][residents];
+        for (int j = 0; j < fx.length; j++) {
+            for (int r = 0; r < residents; r++) {
+                distances[j][r] = MarketKernel.distance(xy[2 * r], xy[2 * r + 1], fx[j], fy[j], manhattan);
+            }
+        }
+        this.grid = new double[GRID_POINTS];
+        for (int k = 0; k < GRID_POINTS; k++) {
+            grid[k] = gridPrice(k);
+        }
+    }
+
+    /** Цена сетки с номером {@code k}. */
+    static double gridPrice(int k) {
+        return HotellingDuopoly.MIN_PRICE + k * STEP;
+    }
+
+    /**
+     * Все равновесия в лексикографическом порядке цен фирм.
+     */
+    public List<double[]> enumerate() {
+        List<double[]> prices = new ArrayList<>();
+        for (int[] profile : enumerateIndices()) {
+            prices.add(Arrays.stream(profile).mapToDouble(EquilibriumEnumerator::gridPrice).toArray());
+        }
+        return prices;
+    }
+
+    /**
+     * Все равновесия как номера цен сетки, в лексикографическом порядке.
+     */
+    public List<int[]> enumerateIndices() {
+        int f = t.length;
+        int[] lo = new int[f];
+        int[] hi = new int[f];
+        Arrays.fill(hi, GRID_POINTS - 1);
+        ConcurrentLinkedQueue<int[]> found = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new BoxSearch(lo, hi, found));
+        List<int[]> sorted = new ArrayList<>(found);
+        sorted.sort(Arrays::compare);
+        return sorted;
+    }
+
+    /** Число просмотренных областей цен за все перечисления. */
+    public long boxesVisited() {
+        return boxes.sum();
+    }
+
+    /** Число кэшированных таблиц долей. */
+    public int cachedTables() {
+        return tables.size();
+    }
+
+    /**
+     * Сужает область цен [lo, hi]: у каждой фирмы остаются только цены, которые могут быть
+     * лучшим ответом при каких-либо ценах конкурентов из области. Возвращает false, если
+     * у какой-то фирмы не осталось цен. Для области из одной точки оставшаяся точка -
+     * равновесие: её прибыль не меньше прибыли любого отклонения по сетке.
+     */
+    private boolean propagate(int[] lo, int[] hi) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < t.length; i++) {
+                // доля растёт с ценами конкурентов: верхние цены дают верхнюю границу прибыли
+                int[] upper = demand(i, hi);
+                int[] lower = Arrays.equals(lo, hi) || rivalsFixed(i, lo, hi) ? upper : demand(i, lo);
+                double guaranteed = 0;
+                for (int k = 0; k < GRID_POINTS; k++) {
+                    guaranteed = Math.max(guaranteed, grid[k] * lower[k]);
+                }
+                int newLo = lo[i], newHi = hi[i];
+                while (newLo <= newHi && grid[newLo] * upper[newLo] < guaranteed - TOL_PROFIT) newLo++;
+                while (newHi >= newLo && grid[newHi] * upper[newHi] < guaranteed - TOL_PROFIT) newHi--;
+                if (newLo > newHi) {
+                    return false;
+                }
+                if (newLo != lo[i] || newHi != hi[i]) {
+                    lo[i] = newLo;
+                    hi[i] = newHi;
+                    changed = true;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean rivalsFixed(int firm, int[] lo, int[] hi) {
+        for (int j = 0; j < lo.length; j++) {
+            if (j != firm && lo[j] != hi[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ветвление по области цен: область сужается, затем делится пополам по самой широкой цене.
+     */
+    private final class BoxSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] lo;
+        private final int[] hi;
+        private final ConcurrentLinkedQueue<int[]> found;
+
+        BoxSearch(int[] lo, int[] hi, ConcurrentLinkedQueue<int[]> found) {
+            this.lo = lo;
+            this.hi = hi;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            boxes.increment();
+            if (!propagate(lo, hi)) {
+                return;
+            }
+            int widest = 0;
+            for (int i = 1; i < lo.length; i++) {
+                if (hi[i] - lo[i] > hi[widest] - lo[widest]) widest = i;
+            }
+            if (hi[widest] == lo[widest]) {
+                found.add(lo.clone());
+                return;
+            }
+            int mid = (lo[widest] + hi[widest]) >>> 1;
+            int[] leftHi = hi.clone();
+            leftHi[widest] = mid;
+            int[] rightLo = lo.clone();
+            rightLo[widest] = mid + 1;
+            invokeAll(new BoxSearch(lo.clone(), leftHi, found), new BoxSearch(rightLo, hi.clone(), found));
+        }
+    }
+
+    /**
+     * Доля фирмы для каждой цены сетки при ценах конкурентов - номерах {@code profile}.
+     * Житель входит в долю, если (цена + t * d) - (наименьшие издержки у конкурентов) меньше
+     * допуска совпадения - как в {@link MarketKernel#shares}.
+     */
+    int[] demand(int firm, int[] profile) {
+        long key = firm;
+        for (int j = 0; j < profile.length; j++) {
+            if (j != firm) key = key * GRID_POINTS + profile[j];
+        }
+        int[] cached = tables.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        int[] demand = computeDemand(firm, profile);
+        if (tables.size() < MAX_TABLES) {
+            tables.put(key, demand);
+        }
+        return demand;
+    }
+
+    private int[] computeDemand(int firm, int[] profile) {
+        int[] bucket = new int[GRID_POINTS + 1];
+        double[] own = distances[firm];
+        for (int r = 0; r < residents; r++) {
+            double rival = Double.MAX_VALUE;
+            for (int j = 0; j < t.length; j++) {
+                if (j != firm) rival = Math.min(rival, grid[profile[j]] + t[j] * distances[j][r]);
+            }
+            double transport = t[firm] * own[r];
+            // наибольший номер цены, при котором житель ещё остаётся у фирмы
+            int left = 0, right = GRID_POINTS - 1, last = -1;
+            while (left <= right) {
+                int mid = (left + right) >>> 1;
+                if ((grid[mid] + transport) - rival < MarketKernel.TIE_TOLERANCE) {
+                    last = mid;
+                    left = mid + 1;
+                } else {
+                    right = mid - 1;
+                }
+            }
+            bucket[last + 1]++;
+        }
+        int[] demand = new int[GRID_POINTS];
+        int suffix = 0;
+        for (int k = GRID_POINTS - 1; k >= 0; k--) {
+            suffix += bucket[k + 1];
+            demand[k] = suffix;
+        }
+        return demand;
+    }
+}
@@ -0,0 +1,307 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Чувствительности равновесных цен и прибылей к параметрам рынка без повторного решения.
+ * <p>
+ * В равновесии p = BR(p, θ), где BR - вектор лучших ответов фирм (тернарный поиск, как
+ * в решателях). По теореме о неявной функции dp/dθ = (I - J)^(-1) ∂BR/∂θ, где J - наклоны
+ * лучших ответов по ценам конкурентов. J считается один раз и общий для всех параметров,
+ * а ∂BR/∂θ - центральными разностями, причём все возмущённые лучшие ответы вычисляются
+ * параллельно одной пачкой по кэшированным расстояниям от жителей до фирм. Для цены на
+ * границе допустимого диапазона лучший ответ равен границе: наклоны равны нулю, а
+ * производная по этой границе - единице.
+ * <p>
+ * Параметры: для каждой фирмы k - {@code t<k>}, {@code x<k>}, {@code y<k>} (нумерация с 1),
+ * затем общий сдвиг {@code t} всех t_k одновременно, {@code minPrice} и {@code maxPrice}.
+ * Производная прибыли берётся центральной разностью вдоль полного изменения (θ, p(θ)).
+ */
+public class EquilibriumSensitivity {
+
+    /** Шаг разностей по ценам. */
+    static final double PRICE_STEP = 0.05;
+
+    /** Шаг разностей по координатам фирм. */
+    static final double COORD_STEP = 0.02;
+
+    /** Относительный шаг разностей по транспортным коэффициентам. */
+    static final double T_STEP = 0.05;
+
+    /** Наименьший шаг разностей по транспортным коэффициентам: при t = 0 относительный шаг нулевой. */
+    static final double MIN_T_STEP = 0.01;
+
+    /** Точность тернарного поиска лучшего ответа. */
+    private static final double PRECISION = 1e-5;
+
+    private final double[] xy;
+    private final boolean manhattan;
+    private final Market base;
+    private final double[] prices;
+    private final LongAdder evaluations = new LongAdder();
+    private double boundTolerance = HotellingDuopoly.PRICE_TOLERANCE;
+
+    /**
+     * @param prices равновесные цены, найденные любым решателем
+     */
+    public EquilibriumSensitivity(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan, double[] prices) {
+        this(xy, fx, fy, t, manhattan, prices, HotellingDuopoly.MIN_PRICE, HotellingDuopoly.MAX_PRICE);
+    }
+
+    public EquilibriumSensitivity(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan,
+                                  double[] prices, double minPrice, double maxPrice) {
+        this.xy = xy;
+        this.manhattan = manhattan;
+        this.prices = prices.clone();
+        double[][] distances = new double[fx.length][];
+        for (int j = 0; j < fx.length; j++) {
+            distances[j] = distances(xy, fx[j], fy[j], manhattan);
+        }
+        this.base = new Market(fx.clone(), fy.clone(), t.clone(), minPrice, maxPrice, distances);
+    }
+
+    /**
+     * Насколько цена может отстоять от границы диапазона, чтобы считаться лежащей на ней.
+     * Решатели останавливаются в пределах своей точности по цене, поэтому допуск должен быть
+     * не меньше её; по умолчанию - {@link HotellingDuopoly#PRICE_TOLERANCE}.
+     */
+    public void setBoundTolerance(double boundTolerance) {
+        this.boundTolerance = boundTolerance;
+    }
+
+    /** Число вычислений долей рынка за все расчёты. */
+    public long evaluations() {
+        return evaluations.sum();
+    }
+
+    public Result compute() {
+        int f = prices.length;
+        List<Perturbation> parameters = new ArrayList<>();
+        for (int k = 0; k < f; k++) {
+            final int firm = k;
+            parameters.add(new Perturbation("t" + (k + 1), tStep(base.t[k]), h -> base.withT(firm, base.t[firm] + h)));
+            parameters.add(new Perturbation("x" + (k + 1), COORD_STEP,
+                    h -> base.withFirm(firm, base.fx[firm] + h, base.fy[firm], xy, manhattan)));
+            parameters.add(new Perturbation("y" + (k + 1), COORD_STEP,
+                    h -> base.withFirm(firm, base.fx[firm], base.fy[firm] + h, xy, manhattan)));
+        }
+        double meanT = Arrays.stream(base.t).average().orElse(1);
+        parameters.add(new Perturbation("t", tStep(meanT), base::shiftedT));
+        parameters.add(new Perturbation("minPrice", PRICE_STEP, h -> base.withBounds(base.minPrice + h, base.maxPrice)));
+        parameters.add(new Perturbation("maxPrice", PRICE_STEP, h -> base.withBounds(base.minPrice, base.maxPrice + h)));
+
+        boolean[] binding = new boolean[f];
+        for (int i = 0; i < f; i++) {
+            binding[i] = prices[i] <= base.minPrice + boundTolerance || prices[i] >= base.maxPrice - boundTolerance;
+        }
+
+        // одна пачка: наклоны по ценам конкурентов и производные по параметрам
+        int slopeTasks = f * f;
+        int tasks = slopeTasks + parameters.size() * f;
+        double[] derivatives = IntStream.range(0, tasks).parallel().mapToDouble(task -> {
+            if (task < slopeTasks) {
+                int i = task / f, j = task % f;
+                if (i == j || binding[i]) return 0;
+                double up = bestResponse(i, MarketEvaluator.withPrice(prices, j, prices[j] + PRICE_STEP), base);
+                double down = bestResponse(i, MarketEvaluator.withPrice(prices, j, prices[j] - PRICE_STEP), base);
+                return (up - down) / (2 * PRICE_STEP);
+            }
+            int p = (task - slopeTasks) / f, i = (task - slopeTasks) % f;
+            Perturbation parameter = parameters.get(p);
+            if (binding[i]) {
+                boolean atMax = prices[i] >= base.maxPrice - boundTolerance;
+                return parameter.name.equals(atMax ? "maxPrice" : "minPrice") ? 1 : 0;
+            }
+            if (parameter.isBound()) {
+                return 0;
+            }
+            double up = bestResponse(i, prices, parameter.market.apply(parameter.step));
+            double down = bestResponse(i, prices, parameter.market.apply(-parameter.step));
+            return (up - down) / (2 * parameter.step);
+        }).toArray();
+
+        double[][] slopes = new double[f][f];
+        double[][] system = new double[f][f];
+        for (int i = 0; i < f; i++) {
+            for (int j = 0; j < f; j++) {
+                slopes[i][j] = derivatives[i * f + j];
+                system[i][j] = (i == j ? 1 : 0) - slopes[i][j];
+            }
+        }
+        String[] names = new String[parameters.size()];
+        double[][] priceSensitivities = new double[parameters.size()][];
+        double[][] profitSensitivities = new double[parameters.size()][];
+        for (int p = 0; p < parameters.size(); p++) {
+            Perturbation parameter = parameters.get(p);
+            double[] rhs = new double[f];
+            System.arraycopy(derivatives, slopeTasks + p * f, rhs, 0, f);
+            double[] dp;
+            try {
+                dp = MarketKernel.solveLinear(system, rhs);
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Матрица I - J вырождена: равновесие не изолировано", e);
+            }
+            names[p] = parameter.name;
+            priceSensitivities[p] = dp;
+            double[] up = profits(shifted(dp, parameter.step), parameter.market.apply(parameter.step));
+            double[] down = profits(shifted(dp, -parameter.step), parameter.market.apply(-parameter.step));
+            profitSensitivities[p] = new double[f];
+            for (int i = 0; i < f; i++) {
+                profitSensitivities[p][i] = (up[i] - down[i]) / (2 * parameter.step);
+            }
+        }
+        return new Result(names, priceSensitivities, profitSensitivities, slopes);
+    }
+
+    private static double tStep(double t) {
+        return Math.max(T_STEP * Math.abs(t), MIN_T_STEP);
+    }
+
+    private double[] shifted(double[] dp, double step) {
+        double[] shifted = prices.clone();
+        for (int i = 0; i < shifted.length; i++) {
+            shifted[i] += dp[i] * step;
+        }
+        return shifted;
+    }
+
+    /**
+     * Тернарный поиск лучшего ответа фирмы в границах цен рынка {@code market}.
+     */
+    private double bestResponse(int firm, double[] prices, Market market) {
+        double[] work = prices.clone();
+        return MarketKernel.ternarySearch(market.minPrice, market.maxPrice, PRECISION, price -> {
+            work[firm] = price;
+            return price * share(firm, work, market);
+        });
+    }
+
+    /**
+     * Доля фирмы по кэшированным расстояниям; правило совпадения издержек - как в {@link MarketKernel#share}.
+     */
+    private int share(int firm, double[] prices, Market market) {
+        evaluations.increment();
+        double[] own = market.distances[firm];
+        int count = 0;
+        for (int r = 0; r < own.length; r++) {
+            double cost = prices[firm] + market.t[firm] * own[r];
+            boolean captured = true;
+            for (int j = 0; j < prices.length && captured; j++) {
+                if (j != firm && cost - (prices[j] + market.t[j] * market.distances[j][r]) >= MarketKernel.TIE_TOLERANCE) {
+                    captured = false;
+                }
+            }
+            if (captured) count++;
+        }
+        return count;
+    }
+
+    private double[] profits(double[] prices, Market market) {
+        double[] profits = new double[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            profits[i] = prices[i] * share(i, prices, market);
+        }
+        return profits;
+    }
+
+    private static double[] distances(double[] xy, double x, double y, boolean manhattan) {
+        double[] d = new double[xy.length / 2];
+        for (int r = 0; r < d.length; r++) {
+            d[r] = MarketKernel.distance(xy[2 * r], xy[2 * r + 1], x, y, manhattan);
+        }
+        return d;
+    }
+
+    /**
+     * Параметры рынка с кэшированными расстояниями; возмущения копируют только изменённое.
+     */
+    private static final class Market {
+        final double[] fx;
+        final double[] fy;
+        final double[] t;
+        final double minPrice;
+        final double maxPrice;
+        final double[][] distances;
+
+        Market(double[] fx, double[] fy, double[] t, double minPrice, double maxPrice, double[][] distances) {
+            this.fx = fx;
+            this.fy = fy;
+            this.t = t;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.distances = distances;
+        }
+
+        Market withT(int firm, double value) {
+            double[] copy = t.clone();
+            copy[firm] = value;
+            return new Market(fx, fy, copy, minPrice, maxPrice, distances);
+        }
+
+        Market shiftedT(double delta) {
+            double[] copy = t.clone();
+            for (int j = 0; j < copy.length; j++) copy[j] += delta;
+            return new Market(fx, fy, copy, minPrice, maxPrice, distances);
+        }
+
+        Market withFirm(int firm, double x, double y, double[] xy, boolean manhattan) {
+            double[] xs = fx.clone(), ys = fy.clone();
+            double[][] d = distances.clone();
+            xs[firm] = x;
+            ys[firm] = y;
+            d[firm] = EquilibriumSensitivity.distances(xy, x, y, manhattan);
+            return new Market(xs, ys, t, minPrice, maxPrice, d);
+        }
+
+        Market withBounds(double min, double max) {
+            return new Market(fx, fy, t, min, max, distances);
+        }
+    }
+
+    private static final class Perturbation {
+        final String name;
+        final double step;
+        final DoubleFunction<Market> market;
+
+        Perturbation(String name, double step, DoubleFunction<Market> market) {
+            this.name = name;
+            this.step = step;
+            this.market = market;
+        }
+
+        boolean isBound() {
+            return name.equals("minPrice") || name.equals("maxPrice");
+        }
+    }
+
+    /**
+     * Чувствительности: {@code prices[p][i]} = dp_i/dθ_p, {@code profits[p][i]} = dπ_i/dθ_p,
+     * {@code slopes[i][j]} = ∂BR_i/∂p_j.
+     */
+    public static class Result {
+        public final String[] parameters;
+        public final double[][] prices;
+        public final double[][] profits;
+        public final double[][] slopes;
+
+        Result(String[] parameters, double[][] prices, double[][] profits, double[][] slopes) {
+            this.parameters = parameters;
+            this.prices = prices;
+            this.profits = profits;
+            this.slopes = slopes;
+        }
+
+        /** Номер параметра по имени или -1. */
+        public int indexOf(String parameter) {
+            for (int p = 0; p < parameters.length; p++) {
+                if (parameters[p].equals(parameter)) return p;
+            }
+            return -1;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
@@ -10,20 +11,60 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 /**
  * Реализация модели дуополии Хотеллинга. Меню выбора методов:
  * Best Response (тернарный поиск для каждого шага),
  * Exhaustive Search (полный перебор по сетке),
- * Ternary Search (непрерывный поиск для всех фирм одновременно).
+ * Ternary Search (непрерывный поиск для всех фирм одновременно),
+ * Location Game (выбор местоположения фирм с последующим ценовым равновесием),
+ * Monte Carlo (доверительные интервалы равновесия по независимым выборкам жителей),
+ * Progressive (равновесие на растущих подвыборках жителей с промежуточными ответами),
+ * All Equilibria (все равновесия на сетке цен с шагом 0.01 для 2-4 фирм),
+ * Logit (гладкий логит-спрос с масштабом μ, равновесие методом Ньютона).
+ * Метрика Road network - кратчайшие пути по уличной сетке {@link RoadNetwork} (для методов
+ * Best Response, Exhaustive Search и Ternary Search).
+ * У фирмы можно задать мощность (третья координата "x,y,мощность"): тогда жители распределяются
+ * {@link CapacitatedAssignment} с учётом мощности (для тех же трёх методов).
+ * После расчёта фирмы можно перетаскивать мышью: доли, прибыли и карта рынков обновляются
+ * сразу, а цены пересчитываются в фоне, когда перетаскивание закончено.
  */
 public class HotellingDuopoly extends Application {
 
     private static final int CANVAS_SIZE = 400;
+    /** Пауза после перетаскивания, по истечении которой цены пересчитываются в фоне. */
+    private static final long RESOLVE_DELAY_MS = 250;
+    /** Метрика кратчайших путей по дорожной сети. */
+    static final String ROAD_NETWORK = "Road network";
+    /** Границы допустимых цен, в которых ведётся поиск равновесия. */
+    static final double MIN_PRICE = 0.1;
+    static final double MAX_PRICE = 10.0;
+
+    /** Решатели останавливаются, когда лучший ответ каждой фирмы отличается от её цены не больше чем на эту величину. */
+    static final double PRICE_TOLERANCE = 1e-3;
     List<Firm> firms = new ArrayList<>();
+    /** Жители в двойной точности; null в компактном режиме, когда жители хранятся только в {@link #compactResidents}. */
     List<double[]> residents = new ArrayList<>();
+    /**
+     * Жители в одинарной точности; не null только в компактном режиме. Вместо списка
+     * {@link #residents} хранится один массив float, что вдвое сокращает память под координаты.
+     */
+    float[] compactResidents;
+    /** Поток снимков итераций следующего решения; null - решатели ничего не публикуют. */
+    SolverTrace trace;
+    /** Номер, изменение цен и число вычислений долей последней итерации решателя; -1 - итераций не было. */
+    private int lastIteration = -1;
+    private double lastMaxDelta;
+    private long lastEvaluations;
     private Label equilibriumLabel;
     private String shape = "Circle";
     String metric = "Euclidean";
@@ -31,10 +72,38 @@ public class HotellingDuopoly extends Application {
     private String firmDistribution = "Manual";
     private String priceDistribution = "Manual";
     private String method = "Best Response";
+    private boolean compactMode = false;
     private TextArea residentsInput;
     private TextArea firmsInput;
     private TextArea pricesInput;
     private TextField transportInput;
+    private TextField seedInput;
+    private TextField logitScaleInput;
+    private long seed;
+    private long residentSeed;
+    private long firmSeed;
+    private long priceSeed;
+    /**
+     * Рынок для перетаскивания фирм; создаётся после каждого расчёта. Для дорожной сети,
+     * фирм с мощностью и компактного режима - null: равновесие пересчитывается целиком после отпускания.
+     */
+    private IncrementalMarket liveMarket;
+    private int draggedFirm = -1;
+    /** Сдвинута ли фирма с момента нажатия. */
+    private boolean firmMoved;
+    private long dragGeneration;
+    private ScheduledFuture<?> pendingSolve;
+    /** Дорожная сеть и рынок на ней для метрики Road network; пересоздаются при смене фигуры, жителей или фирм. */
+    private RoadNetwork roadNetwork;
+    private String roadShape;
+    private RoadNetwork.Market roadMarket;
+    private List<double[]> roadResidents;
+    private double[] roadFirmXy;
+    private final ScheduledExecutorService resolver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "price-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void start(Stage primaryStage) {
@@ -47,7 +116,7 @@ public class HotellingDuopoly extends Application {
         shapeBox.setOnAction(e -> shape = shapeBox.getValue());
 
         ComboBox<String> metricBox = new ComboBox<>();
-        metricBox.getItems().addAll("Euclidean", "Manhattan");
+        metricBox.getItems().addAll("Euclidean", "Manhattan", ROAD_NETWORK);
         metricBox.setValue("Euclidean");
         metricBox.setOnAction(e -> metric = metricBox.getValue());
 
@@ -67,17 +136,21 @@ public class HotellingDuopoly extends Application {
         priceDistBox.setOnAction(e -> priceDistribution = priceDistBox.getValue());
 
         ComboBox<String> methodBox = new ComboBox<>();
-        methodBox.getItems().addAll("Best Response", "Exhaustive Search", "Ternary Search");
+        methodBox.getItems().addAll("Best Response", "Exhaustive Search", "Ternary Search", "Location Game",
+                "Monte Carlo", "Progressive", "All Equilibria", "Logit");
         methodBox.setValue("Best Response");
         methodBox.setOnAction(e -> method = methodBox.getValue());
 
+        CheckBox compactBox = new CheckBox("Компактный режим (float)");
+        compactBox.setOnAction(e -> compactMode = compactBox.isSelected());
+
         residentsInput = new TextArea();
         residentsInput.setPromptText("Введите координаты жителей: x1,y1; x2,y2; ...");
         residentsInput.setPrefRowCount(3);
         residentsInput.setVisible(false);
 
         firmsInput = new TextArea();
-        firmsInput.setPromptText("Введите координаты фирм: x1,y1; x2,y2; ...");
+        firmsInput.setPromptText("Введите координаты фирм: x1,y1; x2,y2,мощность; ...");
         firmsInput.setPrefRowCount(3);
         firmsInput.setVisible(true);
 
@@ -89,6 +162,12 @@ public class HotellingDuopoly extends Application {
         transportInput = new TextField("1.0");
         transportInput.setPromptText("Коэффициент транспортных издержек t");
 
+        seedInput = new TextField();
+        seedInput.setPromptText("Пусто - случайное зерно");
+
+        logitScaleInput = new TextField("0.05");
+        logitScaleInput.setPromptText("Масштаб логит-спроса μ (0 - исходная модель)");
+
         residentDistBox.valueProperty().addListener((obs, oldVal, newVal) -> {
             residentsInput.setVisible("Manual".equals(newVal));
         });
@@ -102,8 +181,50 @@ public class HotellingDuopoly extends Application {
         Button calculateButton = new Button("Calculate");
         calculateButton.setOnAction(e -> {
             parseInputs();
-            drawModel(gc);
             calculateEquilibrium();
+            liveMarket = metric.equals(ROAD_NETWORK) || capacitated() || compactResidents != null ? null
+                    : new IncrementalMarket(MarketKernel.pack(residents),
+                    MarketKernel.xs(firms), MarketKernel.ys(firms), MarketKernel.transportCoefs(firms),
+                    MarketKernel.prices(firms), metric.equals("Manhattan"));
+            drawModel(gc);
+        });
+
+        canvas.setOnMousePressed(e -> {
+            draggedFirm = firmAt(e.getX(), e.getY());
+            firmMoved = false;
+        });
+        canvas.setOnMouseDragged(e -> {
+            if (draggedFirm < 0) {
+                return;
+            }
+            double x = Math.min(1, Math.max(0, e.getX() / CANVAS_SIZE));
+            double y = Math.min(1, Math.max(0, e.getY() / CANVAS_SIZE));
+            if (!isInsideShape(x, y, shape)) {
+                return;
+            }
+            Firm firm = firms.get(draggedFirm);
+            firm.x = x;
+            firm.y = y;
+            firmMoved = true;
+            dragGeneration++;
+            if (liveMarket == null) {
+                // дорожная сеть, мощности или компактный режим: доли пересчитываются при отпускании
+                drawModel(gc);
+                equilibriumLabel.setText("Перетаскивание: равновесие пересчитается после отпускания");
+                return;
+            }
+            liveMarket.moveFirm(draggedFirm, x, y);
+            drawModel(gc);
+            showLiveMarket("Перетаскивание");
+        });
+        canvas.setOnMouseReleased(e -> {
+            if (draggedFirm >= 0 && liveMarket != null) {
+                scheduleResolve(gc);
+            } else if (draggedFirm >= 0 && firmMoved) {
+                calculateEquilibrium();
+                drawModel(gc);
+            }
+            draggedFirm = -1;
         });
 
         equilibriumLabel = new Label("Равновесие: N/A");
@@ -133,7 +254,12 @@ public class HotellingDuopoly extends Application {
         grid.add(transportInput, 1, 8);
         grid.add(new Label("Метод:"), 0, 9);
         grid.add(methodBox, 1, 9);
-        grid.add(calculateButton, 1, 10);
+        grid.add(new Label("Зерно генератора:"), 0, 10);
+        grid.add(seedInput, 1, 10);
+        grid.add(compactBox, 1, 11);
+        grid.add(new Label("Масштаб логита μ:"), 0, 12);
+        grid.add(logitScaleInput, 1, 12);
+        grid.add(calculateButton, 1, 13);
 
         VBox layout = new VBox(10, grid, canvas, equilibriumLabel);
         layout.setPadding(new javafx.geometry.Insets(10));
@@ -155,6 +281,16 @@ public class HotellingDuopoly extends Application {
             transportCoef = 1.0;
         }
 
+        try {
+            seed = Long.parseLong(seedInput.getText().trim());
+        } catch (NumberFormatException e) {
+            seed = new SplittableRandom().nextLong();
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+        residentSeed = seeds.nextLong();
+        firmSeed = seeds.nextLong();
+        priceSeed = seeds.nextLong();
+
         if (residentDistribution.equals("Manual")) {
             residents = parseResidents(residentsInput.getText());
         } else {
@@ -182,6 +318,23 @@ public class HotellingDuopoly extends Application {
             firms.get(i).price = prices.get(i);
             firms.get(i).transportCoef = transportCoef;
         }
+
+        compactResidents = null;
+        if (compactMode) {
+            if (metric.equals(ROAD_NETWORK) || capacitated()) {
+                showError("Компактный режим недоступен для дорожной сети и фирм с ограниченной мощностью: "
+                        + "расчёт идёт в двойной точности");
+                return;
+            }
+            try {
+                MarketKernel.validateTieTolerance(MarketKernel.FLOAT_TIE_TOLERANCE, MarketKernel.maxCost(
+                        MarketKernel.transportCoefs(firms), MarketKernel.prices(firms), metric.equals("Manhattan")));
+                compactResidents = MarketKernel.compact(MarketKernel.pack(residents));
+                residents = null;
+            } catch (IllegalArgumentException e) {
+                showError("Компактный режим недоступен: " + e.getMessage());
+            }
+        }
     }
 
     private List<double[]> parseResidents(String input) {
@@ -204,58 +357,8 @@ public class HotellingDuopoly extends Application {
     }
 
     private List<double[]> generateUniformResidents(String shape, String metric) {
-        List<double[]> residents = new ArrayList<>();
         int numResidents = 1000;
-        if (metric.equals("Manhattan")) {
-            int gridSize = 20;
-            Random rand = new Random();
-            for (int k = 0; k < numResidents; k++) {
-                boolean vertical = rand.nextBoolean();
-                if (vertical) {
-                    int i = rand.nextInt(gridSize + 1);
-                    double x = (double) i / gridSize;
-                    if (shape.equals("Circle")) {
-                        double dx = Math.abs(x - 0.5);
-                        double maxDelta = Math.sqrt(0.25 - dx * dx);
-                        double y = 0.5 - maxDelta + rand.nextDouble() * (2 * maxDelta);
-                        residents.add(new double[]{x, y});
-                    } else {
-                        double y = rand.nextDouble();
-                        residents.add(new double[]{x, y});
-                    }
-                } else {
-                    int j = rand.nextInt(gridSize + 1);
-                    double y = (double) j / gridSize;
-                    if (shape.equals("Circle")) {
-                        double dy = Math.abs(y - 0.5);
-                        double maxDelta = Math.sqrt(0.25 - dy * dy);
-                        double x = 0.5 - maxDelta + rand.nextDouble() * (2 * maxDelta);
-                        residents.add(new double[]{x, y});
-                    } else {
-                        double x = rand.nextDouble();
-                        residents.add(new double[]{x, y});
-                    }
-                }
-            }
-        } else {
-            Random rand = new Random();
-            if (shape.equals("Circle")) {
-                for (int i = 0; i < numResidents; i++) {
-                    double r = Math.sqrt(rand.nextDouble()) * 0.5;
-                    double theta = rand.nextDouble() * 2 * Math.PI;
-                    double x = 0.5 + r * Math.cos(theta);
-                    double y = 0.5 + r * Math.sin(theta);
-                    residents.add(new double[]{x, y});
-                }
-            } else {
-                for (int i = 0; i < numResidents; i++) {
-                    double x = rand.nextDouble();
-                    double y = rand.nextDouble();
-                    residents.add(new double[]{x, y});
-                }
-            }
-        }
-        return residents;
+        return ResidentGenerator.toList(ResidentGenerator.uniform(residentSeed, numResidents, shape, metric));
     }
 
     private List<Firm> parseFirms(String input) {
@@ -263,12 +366,21 @@ public class HotellingDuopoly extends Application {
         String[] points = input.split(";");
         for (int i = 0; i < points.length; i++) {
             String[] coords = points[i].trim().split(",");
-            if (coords.length == 2) {
+            if (coords.length == 2 || coords.length == 3) {
                 try {
                     double x = Double.parseDouble(coords[0].trim());
                     double y = Double.parseDouble(coords[1].trim());
                     if (isInsideShape(x, y, shape)) {
-                        firms.add(new Firm(x, y, i));
+                        Firm firm = new Firm(x, y, i);
+                        if (coords.length == 3) {
+                            double capacity = Double.parseDouble(coords[2].trim());
+                            if (Double.isNaN(capacity)) {
+                                showError("Мощность фирмы " + (i + 1) + " должна быть числом или Infinity");
+                                continue;
+                            }
+                            firm.capacity = Math.max(0, capacity);
+                        }
+                        firms.add(firm);
                     }
                 } catch (NumberFormatException ex) {
                 }
@@ -278,23 +390,7 @@ public class HotellingDuopoly extends Application {
     }
 
     private List<Firm> generateRandomFirms(String shape) {
-        List<Firm> firms = new ArrayList<>();
-        Random rand = new Random();
-        int numFirms = rand.nextInt(5) + 2;
-        for (int i = 0; i < numFirms; i++) {
-            double x, y;
-            if (shape.equals("Circle")) {
-                double r = Math.sqrt(rand.nextDouble()) * 0.5;
-                double theta = rand.nextDouble() * 2 * Math.PI;
-                x = 0.5 + r * Math.cos(theta);
-                y = 0.5 + r * Math.sin(theta);
-            } else {
-                x = rand.nextDouble();
-                y = rand.nextDouble();
-            }
-            firms.add(new Firm(x, y, i));
-        }
-        return firms;
+        return ResidentGenerator.randomFirms(firmSeed, shape);
     }
 
     private List<Double> parsePrices(String input) {
@@ -312,15 +408,13 @@ public class HotellingDuopoly extends Application {
 
     private List<Double> generateRandomPrices(int numFirms) {
         List<Double> prices = new ArrayList<>();
-        Random rand = new Random();
-        for (int i = 0; i < numFirms; i++) {
-            double price = 1 + rand.nextDouble() * 9;
+        for (double price : ResidentGenerator.randomPrices(priceSeed, numFirms)) {
             prices.add(price);
         }
         return prices;
     }
 
-    private boolean isInsideShape(double x, double y, String shape) {
+    static boolean isInsideShape(double x, double y, String shape) {
         if (shape.equals("Circle")) {
             return Math.hypot(x - 0.5, y - 0.5) <= 0.5;
         } else {
@@ -328,14 +422,6 @@ public class HotellingDuopoly extends Application {
         }
     }
 
-    private double calculateDistance(double x1, double y1, double x2, double y2, String metric) {
-        if (metric.equals("Manhattan")) {
-            return Math.abs(x1 - x2) + Math.abs(y1 - y2);
-        } else {
-            return Math.hypot(x1 - x2, y1 - y2);
-        }
-    }
-
     private void drawModel(GraphicsContext gc) {
         gc.clearRect(0, 0, CANVAS_SIZE, CANVAS_SIZE);
 
@@ -387,11 +473,38 @@ public class HotellingDuopoly extends Application {
             }
         }
 
-        gc.setFill(Color.GRAY);
-        for (double[] resident : residents) {
-            int pixelX = (int) (resident[0] * CANVAS_SIZE);
-            int pixelY = (int) (resident[1] * CANVAS_SIZE);
-            gc.fillRect(pixelX, pixelY, 2, 2);
+        if (metric.equals(ROAD_NETWORK)) {
+            gc.setStroke(Color.LIGHTGRAY);
+            double[] segments = roadNetwork().segments();
+            for (int k = 0; k < segments.length; k += 4) {
+                gc.strokeLine(segments[k] * CANVAS_SIZE, segments[k + 1] * CANVAS_SIZE,
+                        segments[k + 2] * CANVAS_SIZE, segments[k + 3] * CANVAS_SIZE);
+            }
+        }
+
+        if (liveMarket != null && liveMarket.firmCount() == firms.size()) {
+            // карта рынков: жители окрашены в цвет фирмы с наименьшими издержками
+            Color[] colors = new Color[firms.size()];
+            for (int j = 0; j < colors.length; j++) {
+                colors[j] = Color.hsb(360.0 * j / colors.length, 0.6, 0.85);
+            }
+            for (int r = 0; r < liveMarket.residentCount(); r++) {
+                gc.setFill(colors[liveMarket.owner(r)]);
+                gc.fillRect((int) (liveMarket.x(r) * CANVAS_SIZE), (int) (liveMarket.y(r) * CANVAS_SIZE), 2, 2);
+            }
+        } else {
+            gc.setFill(Color.GRAY);
+            if (residents == null) {
+                for (int r = 0; r < compactResidents.length; r += 2) {
+                    gc.fillRect((int) (compactResidents[r] * CANVAS_SIZE), (int) (compactResidents[r + 1] * CANVAS_SIZE), 2, 2);
+                }
+            } else {
+                for (double[] resident : residents) {
+                    int pixelX = (int) (resident[0] * CANVAS_SIZE);
+                    int pixelY = (int) (resident[1] * CANVAS_SIZE);
+                    gc.fillRect(pixelX, pixelY, 2, 2);
+                }
+            }
         }
 
         for (Firm firm : firms) {
@@ -405,21 +518,97 @@ public class HotellingDuopoly extends Application {
     }
 
     private void calculateEquilibrium() {
+        boolean evaluatorMethod = method.equals("Best Response") || method.equals("Exhaustive Search")
+                || method.equals("Ternary Search");
+        if (metric.equals(ROAD_NETWORK) && !evaluatorMethod) {
+            showError("Метрика Road network доступна для методов Best Response, Exhaustive Search и Ternary Search");
+            return;
+        }
+        if (capacitated() && (!evaluatorMethod || metric.equals(ROAD_NETWORK))) {
+            showError("Мощность фирм учитывается методами Best Response, Exhaustive Search и Ternary Search "
+                    + "для метрик Euclidean и Manhattan");
+            return;
+        }
+        if (method.equals("Progressive")) {
+            solveProgressively();
+            return;
+        }
         // запустить выбранный метод
+        ReplicationRunner.Result replications = null;
+        List<double[]> equilibria = null;
+        LogitDemand.Solution logit = null;
+        lastIteration = -1;
         if (method.equals("Best Response")) {
             bestResponseDynamics();
         } else if (method.equals("Exhaustive Search")) {
             exhaustiveGridSearchNash();
+        } else if (method.equals("Location Game")) {
+            new LocationGame(ResidentGenerator.toList(residentXy()), shape, metric, 10).solve(firms, 20);
+        } else if (method.equals("All Equilibria")) {
+            if (firms.size() < 2 || firms.size() > 4) {
+                showError("Перечисление равновесий доступно для 2-4 фирм");
+                return;
+            }
+            equilibria = new EquilibriumEnumerator(residentXy(), MarketKernel.xs(firms),
+                    MarketKernel.ys(firms), MarketKernel.transportCoefs(firms), metric.equals("Manhattan")).enumerate();
+            if (!equilibria.isEmpty()) {
+                applyPrices(equilibria.get(0));
+            }
+        } else if (method.equals("Logit")) {
+            double scale;
+            try {
+                scale = Math.max(0, Double.parseDouble(logitScaleInput.getText().trim()));
+            } catch (NumberFormatException e) {
+                scale = 0.05;
+            }
+            logit = new LogitDemand(residentXy(), MarketKernel.xs(firms), MarketKernel.ys(firms),
+                    MarketKernel.transportCoefs(firms), metric.equals("Manhattan"), scale)
+                    .solve(MarketKernel.prices(firms));
+            applyPrices(logit.prices);
+        } else if (method.equals("Monte Carlo")) {
+            replications = new ReplicationRunner(firms, shape, metric,
+                    residents == null ? compactResidents.length / 2 : residents.size(), residentSeed).run(200, 0.01);
+            for (int i = 0; i < firms.size(); i++) {
+                firms.get(i).price = replications.meanPrices[i];
+            }
         } else {
             ternarySearchNash();
         }
         // формируем строку результатов последней итерации
-        StringBuilder result = new StringBuilder("Результаты для последней итерации: ");
+        StringBuilder result = new StringBuilder(String.format("Зерно %d. Результаты для последней итерации: ", seed));
+        double[] profits = evaluator().profits(MarketKernel.prices(firms));
         for (Firm firm : firms) {
-            double profit = calculateProfit(firm, residents, metric);
+            double profit = profits[firms.indexOf(firm)];
             result.append(String.format("Фирма %d: цена %.2f, прибыль %.2f; ",
                     firm.index + 1, firm.price, profit));
         }
+        if (replications != null) {
+            result.append(String.format("Монте-Карло, %d репликаций: ", replications.replications));
+            for (int i = 0; i < firms.size(); i++) {
+                result.append(String.format("фирма %d: цена %.3f ± %.3f, прибыль %.2f ± %.2f; ",
+                        firms.get(i).index + 1, replications.meanPrices[i], replications.priceHalfWidths[i],
+                        replications.meanProfits[i], replications.profitHalfWidths[i]));
+            }
+        }
+        if (lastIteration >= 0) {
+            result.append(String.format("Итераций %d, вычислений долей %d, последнее изменение цен %.4f; ",
+                    lastIteration + 1, lastEvaluations, lastMaxDelta));
+        }
+        if (logit != null) {
+            double[] expected = logit.profits();
+            result.append(String.format("Логит, итераций Ньютона %d%s: ", logit.iterations,
+                    logit.converged ? "" : " (без сходимости)"));
+            for (int i = 0; i < firms.size(); i++) {
+                result.append(String.format("фирма %d: ожидаемая прибыль %.2f; ", firms.get(i).index + 1, expected[i]));
+            }
+        }
+        if (equilibria != null) {
+            result.append(String.format("Равновесий на сетке: %d", equilibria.size()));
+            for (int k = 0; k < Math.min(10, equilibria.size()); k++) {
+                result.append(k == 0 ? ": " : ", ").append(formatPrices(equilibria.get(k)));
+            }
+            result.append(equilibria.size() > 10 ? ", ...; " : "; ");
+        }
         // проверяем Nash
         if (isNashEquilibrium()) {
             result.append("Nash-равновесие найдено.");
@@ -429,135 +618,297 @@ public class HotellingDuopoly extends Application {
         equilibriumLabel.setText(result.toString());
     }
 
+    /**
+     * Progressive: решение в фоне на растущих подвыборках; каждый этап сразу выводится на экран.
+     */
+    private void solveProgressively() {
+        List<Firm> target = firms;
+        ProgressiveSolver solver = new ProgressiveSolver(target, residentXy(), metric, residentSeed);
+        double[] start = MarketKernel.prices(target);
+        equilibriumLabel.setText("Равновесие: вычисляется...");
+        CompletableFuture.runAsync(() -> solver.solve(start,
+                        estimate -> Platform.runLater(() -> showEstimate(target, estimate))))
+                .exceptionally(e -> {
+                    Platform.runLater(() -> showError("Ошибка решения: " + e.getMessage()));
+                    return null;
+                });
+    }
+
+    private void showEstimate(List<Firm> target, ProgressiveSolver.Estimate estimate) {
+        if (target != firms) {
+            return;
+        }
+        applyPrices(estimate.prices);
+        if (liveMarket != null) {
+            liveMarket.setPrices(estimate.prices);
+        }
+        StringBuilder result = new StringBuilder(String.format(
+                "Зерно %d. Этап %d (%d из %d жителей), изменение цен %.4f: ",
+                seed, estimate.stage + 1, estimate.sampleSize, estimate.population, estimate.maxPriceChange));
+        for (int i = 0; i < firms.size(); i++) {
+            result.append(String.format("Фирма %d: цена %.2f, прибыль %.2f ± %.2f; ",
+                    firms.get(i).index + 1, estimate.prices[i], estimate.profits[i], estimate.profitStdErrors[i]));
+        }
+        result.append(estimate.isFinal() ? "Расчёт завершён." : "Уточняется...");
+        equilibriumLabel.setText(result.toString());
+    }
+
+    private static String formatPrices(double[] prices) {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = 0; i < prices.length; i++) {
+            text.append(i == 0 ? "" : ", ").append(String.format("%.2f", prices[i]));
+        }
+        return text.append(")").toString();
+    }
+
+    /**
+     * Номер фирмы под курсором или -1.
+     */
+    private int firmAt(double pixelX, double pixelY) {
+        for (int i = firms.size() - 1; i >= 0; i--) {
+            Firm firm = firms.get(i);
+            if (Math.hypot(firm.x * CANVAS_SIZE - pixelX, firm.y * CANVAS_SIZE - pixelY) <= 8) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Откладывает пересчёт цен на {@link #RESOLVE_DELAY_MS}; новое перетаскивание отменяет
+     * ожидающий пересчёт, а устаревший результат не применяется.
+     */
+    private void scheduleResolve(GraphicsContext gc) {
+        if (pendingSolve != null) {
+            pendingSolve.cancel(false);
+        }
+        long generation = ++dragGeneration;
+        IncrementalMarket market = liveMarket;
+        double[] xy = market.residents();
+        double[] fx = MarketKernel.xs(firms), fy = MarketKernel.ys(firms), t = MarketKernel.transportCoefs(firms);
+        double[] start = MarketKernel.prices(firms);
+        boolean manhattan = metric.equals("Manhattan");
+        pendingSolve = resolver.schedule(() -> {
+            double[] prices = MarketKernel.bestResponseDynamics(xy, fx, fy, t, start, manhattan, 1e-3, 100);
+            Platform.runLater(() -> {
+                if (generation != dragGeneration || market != liveMarket) {
+                    return;
+                }
+                applyPrices(prices);
+                market.setPrices(prices);
+                drawModel(gc);
+                showLiveMarket("Цены пересчитаны");
+            });
+        }, RESOLVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void showLiveMarket(String status) {
+        int[] shares = liveMarket.shares();
+        double[] profits = liveMarket.profits();
+        StringBuilder result = new StringBuilder(status + ": ");
+        for (int i = 0; i < firms.size(); i++) {
+            result.append(String.format("Фирма %d: цена %.2f, доля %d, прибыль %.2f; ",
+                    firms.get(i).index + 1, firms.get(i).price, shares[i], profits[i]));
+        }
+        equilibriumLabel.setText(result.toString());
+    }
+
     /**
      * Best-response dynamics с тернарным поиском для каждого шага.
      */
     private void bestResponseDynamics() {
-        double tolPrice = 1e-3;
+        double tolPrice = PRICE_TOLERANCE;
         int maxIterations = 10000;
+        MarketEvaluator market = evaluator();
+        double[] prices = MarketKernel.prices(firms);
         for (int iter = 0; iter < maxIterations; iter++) {
+            market = market.warmStarted(prices);
             boolean anyChange = false;
-            for (Firm firm : firms) {
-                double currentPrice = firm.price;
-                double bestPrice = ternarySearchPrice(firm);
-                if (Math.abs(bestPrice - currentPrice) > tolPrice) {
-                    firm.price = bestPrice;
+            double maxDelta = 0;
+            for (int i = 0; i < prices.length; i++) {
+                double bestPrice = market.ternarySearchPrice(i, prices);
+                maxDelta = Math.max(maxDelta, Math.abs(bestPrice - prices[i]));
+                if (Math.abs(bestPrice - prices[i]) > tolPrice) {
+                    prices[i] = bestPrice;
                     anyChange = true;
                 }
             }
+            publishIteration(market, iter, prices, maxDelta);
             if (!anyChange) break;
         }
+        completeTrace();
+        applyPrices(prices);
     }
 
     /**
      * Exhaustive Search: перебор сетки цен с шагом 0.01 для каждой фирмы при фиксированных ценах остальных.
+     * Цены сетки оцениваются параллельно.
      */
     private void exhaustiveGridSearchNash() {
-        double tolPrice = 1e-3;
+        double tolPrice = PRICE_TOLERANCE;
         int maxIterations = 100;
+        int gridPoints = (int) Math.round((MAX_PRICE - MIN_PRICE) / 0.01) + 1;
+        MarketEvaluator market = evaluator();
+        double[] prices = MarketKernel.prices(firms);
         for (int iter = 0; iter < maxIterations; iter++) {
+            market = market.warmStarted(prices);
+            MarketEvaluator warm = market;
             boolean anyChange = false;
-            for (Firm firm : firms) {
-                double currentPrice = firm.price;
-                double bestPrice = currentPrice;
-                double bestProfit = calculateProfit(firm, residents, metric);
-                for (double testPrice = 0.1; testPrice <= 10; testPrice += 0.01) {
-                    firm.price = testPrice;
-                    double profit = calculateProfit(firm, residents, metric);
-                    if (profit > bestProfit) {
-                        bestProfit = profit;
-                        bestPrice = testPrice;
+            double maxDelta = 0;
+            for (int i = 0; i < prices.length; i++) {
+                final int firm = i;
+                final double[] current = prices.clone();
+                double[] profits = IntStream.range(0, gridPoints).parallel()
+                        .mapToDouble(k -> warm.profit(firm, MarketEvaluator.withPrice(current, firm, MIN_PRICE + k * 0.01)))
+                        .toArray();
+                double bestPrice = prices[i];
+                double bestProfit = warm.profit(i, prices);
+                for (int k = 0; k < gridPoints; k++) {
+                    if (profits[k] > bestProfit) {
+                        bestProfit = profits[k];
+                        bestPrice = MIN_PRICE + k * 0.01;
                     }
                 }
-                if (Math.abs(bestPrice - currentPrice) > tolPrice) {
-                    firm.price = bestPrice;
+                maxDelta = Math.max(maxDelta, Math.abs(bestPrice - prices[i]));
+                if (Math.abs(bestPrice - prices[i]) > tolPrice) {
+                    prices[i] = bestPrice;
                     anyChange = true;
-                } else {
-                    firm.price = currentPrice;
                 }
             }
+            publishIteration(market, iter, prices, maxDelta);
             if (!anyChange) break;
         }
+        completeTrace();
+        applyPrices(prices);
     }
 
     /**
      * Ternary Search Nash: непрерывный поиск для всех фирм сразу.
      */
     private void ternarySearchNash() {
-        double tolPrice = 1e-3;
+        double tolPrice = PRICE_TOLERANCE;
         int maxIterations = 100;
+        MarketEvaluator market = evaluator();
+        double[] prices = MarketKernel.prices(firms);
         for (int iter = 0; iter < maxIterations; iter++) {
+            market = market.warmStarted(prices);
             boolean anyChange = false;
-            for (Firm firm : firms) {
-                double currentPrice = firm.price;
-                double bestPrice = ternarySearchPrice(firm);
-                if (Math.abs(bestPrice - currentPrice) > tolPrice) {
-                    firm.price = bestPrice;
+            double maxDelta = 0;
+            for (int i = 0; i < prices.length; i++) {
+                double bestPrice = market.ternarySearchPrice(i, prices);
+                maxDelta = Math.max(maxDelta, Math.abs(bestPrice - prices[i]));
+                if (Math.abs(bestPrice - prices[i]) > tolPrice) {
+                    prices[i] = bestPrice;
                     anyChange = true;
                 }
             }
+            publishIteration(market, iter, prices, maxDelta);
             if (!anyChange) break;
         }
+        completeTrace();
+        applyPrices(prices);
     }
 
     /**
-     * Тройной (ternary) поиск оптимальной цены для данной фирмы при фиксированных ценах конкурентов.
+     * Подключает поток снимков итераций к следующему решению; после решения поток завершается
+     * и отключается. Без подписчика решатели не тратят лишнего вычисления долей на снимки.
      */
-    private double ternarySearchPrice(Firm firm) {
-        double left = 0.1, right = 10.0;
-        for (int i = 0; i < 50; i++) {
-            double m1 = left + (right - left) / 3;
-            double m2 = right - (right - left) / 3;
-            firm.price = m1;
-            double profit1 = calculateProfit(firm, residents, metric);
-            firm.price = m2;
-            double profit2 = calculateProfit(firm, residents, metric);
-            if (profit1 < profit2) {
-                left = m1;
-            } else {
-                right = m2;
-            }
+    public void setTrace(SolverTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Запоминает итог итерации и публикует её снимок в {@link #trace}, если он задан. Доли для
+     * снимка считаются только при подключённой трассировке и не входят в число вычислений.
+     */
+    private void publishIteration(MarketEvaluator market, int iteration, double[] prices, double maxDelta) {
+        lastIteration = iteration;
+        lastMaxDelta = maxDelta;
+        lastEvaluations = market.evaluations();
+        if (trace != null) {
+            trace.publish(new SolverTrace.Snapshot(iteration, prices.clone(), market.shares(prices), maxDelta, lastEvaluations));
+        }
+    }
+
+    private void completeTrace() {
+        if (trace != null) {
+            trace.complete();
+            trace = null;
         }
-        return (left + right) / 2;
     }
 
     /**
-     * Проверяет, является ли текущий набор цен Nash-равновесием.
+     * Проверяет, является ли текущий набор цен Nash-равновесием. Цены фирм не изменяются.
      */
     private boolean isNashEquilibrium() {
         double tolImprovement = 1e-4;
-        for (Firm firm : firms) {
-            double currentProfit = calculateProfit(firm, residents, metric);
-            double bestPrice = ternarySearchPrice(firm);
-            firm.price = bestPrice;
-            double bestProfit = calculateProfit(firm, residents, metric);
-            firm.price = bestPrice;
-            if (bestProfit > currentProfit + tolImprovement) {
-                return false;
-            }
+        return evaluator().isNashEquilibrium(MarketKernel.prices(firms), tolImprovement);
+    }
+
+    /**
+     * Неизменяемый снимок текущих фирм и жителей для решателей. В компактном режиме доли
+     * считаются по жителям в одинарной точности.
+     */
+    private MarketEvaluator evaluator() {
+        if (metric.equals(ROAD_NETWORK)) {
+            return MarketEvaluator.road(roadMarket(residents), MarketKernel.xs(firms), MarketKernel.ys(firms),
+                    MarketKernel.transportCoefs(firms));
+        }
+        if (compactResidents != null) {
+            return MarketEvaluator.compact(compactResidents, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                    MarketKernel.transportCoefs(firms), metric.equals("Manhattan"));
         }
-        return true;
+        return new MarketEvaluator(firms, residents, metric);
     }
 
     /**
-     * Вычисление прибыли фирмы: цена * число жителей, для которых фирма минимизирует (price + t*distance).
+     * Координаты жителей подряд (x0, y0, x1, y1, ...) для решателей, которым нужна двойная точность;
+     * в компактном режиме это временная расширенная копия {@link #compactResidents}.
      */
-    private double calculateProfit(Firm firm, List<double[]> residents, String metric) {
-        int marketShare = 0;
-        for (double[] resident : residents) {
-            double minCost = Double.MAX_VALUE;
-            for (Firm f : firms) {
-                double dist = calculateDistance(resident[0], resident[1], f.x, f.y, metric);
-                double cost = f.price + f.transportCoef * dist;
-                if (cost < minCost) minCost = cost;
-            }
-            double firmCost = calculateDistance(resident[0], resident[1], firm.x, firm.y, metric)
-                    * firm.transportCoef + firm.price;
-            if (Math.abs(firmCost - minCost) < 1e-9 || firmCost < minCost) {
-                marketShare++;
-            }
+    private double[] residentXy() {
+        if (residents != null) {
+            return MarketKernel.pack(residents);
+        }
+        double[] xy = new double[compactResidents.length];
+        for (int i = 0; i < xy.length; i++) {
+            xy[i] = compactResidents[i];
+        }
+        return xy;
+    }
+
+    /** Есть ли фирма с конечной мощностью. */
+    private boolean capacitated() {
+        return firms.stream().anyMatch(f -> Double.isFinite(f.capacity));
+    }
+
+    private RoadNetwork roadNetwork() {
+        if (roadNetwork == null || !shape.equals(roadShape)) {
+            roadNetwork = RoadNetwork.streetGrid(ResidentGenerator.GRID_SIZE, shape);
+            roadShape = shape;
+            roadMarket = null;
+        }
+        return roadNetwork;
+    }
+
+    /**
+     * Рынок на дорожной сети; поля расстояний пересчитываются, только если изменились
+     * фигура, жители или расположение фирм.
+     */
+    private RoadNetwork.Market roadMarket(List<double[]> residents) {
+        RoadNetwork network = roadNetwork();
+        double[] firmXy = MarketKernel.pack(firms.stream().map(f -> new double[]{f.x, f.y}).toList());
+        if (roadMarket == null || roadResidents != residents || !Arrays.equals(roadFirmXy, firmXy)) {
+            roadMarket = network.market(MarketKernel.pack(residents), MarketKernel.xs(firms), MarketKernel.ys(firms));
+            roadResidents = residents;
+            roadFirmXy = firmXy;
+        }
+        return roadMarket;
+    }
+
+    private void applyPrices(double[] prices) {
+        for (int i = 0; i < prices.length; i++) {
+            firms.get(i).price = prices[i];
         }
-        return firm.price * marketShare;
     }
 
     private void showError(String message) {
@@ -572,6 +923,8 @@ public class HotellingDuopoly extends Application {
         public double price;
         int index;
         public double transportCoef;
+        /** Мощность: наибольшее число обслуживаемых жителей; по умолчанию без ограничения. */
+        public double capacity = Double.POSITIVE_INFINITY;
 
         public Firm(double x, double y, int index) {
             this.x = x;
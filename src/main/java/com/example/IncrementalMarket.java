@@ -0,0 +1,271 @@
+package com.example;
+
+/**
+ * Рынок с инкрементальным пересчётом при перемещении фирмы или изменении её цены.
+ * Для каждого жителя хранятся наименьшие издержки и маска фирм, совпадающих с ними
+ * в пределах {@link MarketKernel#TIE_TOLERANCE}; доли рынка поддерживаются по этим маскам.
+ * <p>
+ * Жители разложены по сетке ячеек, для каждой ячейки известны наибольшие наименьшие издержки
+ * и объединение масок. При изменении фирмы ячейка просматривается, только если фирма в ней
+ * уже обслуживает кого-то или её новые издержки до ячейки могут оказаться не хуже текущих;
+ * полностью пересчитываются лишь жители, у которых фирма входит или может войти в набор лучших.
+ * Результат совпадает с {@link MarketKernel#shares} на тех же данных.
+ */
+public class IncrementalMarket {
+
+    /** Наибольшее число фирм: маска лучших фирм жителя хранится в {@code long}. */
+    static final int MAX_FIRMS = 64;
+
+    /** Число ячеек сетки по каждой оси. */
+    static final int GRID = 64;
+
+    /** Запас на ошибки округления в нижней оценке издержек до ячейки. */
+    private static final double SLACK = 1e-9;
+
+    private final double[] xy;
+    private final int[] cellStart;
+    private final double x0;
+    private final double y0;
+    private final double cellW;
+    private final double cellH;
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final double[] prices;
+    private final boolean manhattan;
+    private final double[] best;
+    private final long[] mask;
+    private final int[] owner;
+    private final double[] cellMaxBest;
+    private final long[] cellMask;
+    private final int[] shares;
+    /** Издержки жителя у фирм при пересчёте; общий буфер, так как методы рынка не потокобезопасны. */
+    private final double[] cost;
+    private int lastTouched;
+
+    /**
+     * Рынок по жителям {x0, y0, x1, y1, ...} и параметрам фирм; массивы копируются.
+     */
+    public IncrementalMarket(double[] xy, double[] fx, double[] fy, double[] t, double[] prices, boolean manhattan) {
+        if (fx.length > MAX_FIRMS) {
+            throw new IllegalArgumentException("Не более " + MAX_FIRMS + " фирм, получено " + fx.length);
+        }
+        int n = xy.length / 2;
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int r = 0; r < n; r++) {
+            minX = Math.min(minX, xy[2 * r]);
+            maxX = Math.max(maxX, xy[2 * r]);
+            minY = Math.min(minY, xy[2 * r + 1]);
+            maxY = Math.max(maxY, xy[2 * r + 1]);
+        }
+        if (n == 0) {
+            minX = maxX = minY = maxY = 0;
+        }
+        this.x0 = minX;
+        this.y0 = minY;
+        this.cellW = Math.max(maxX - minX, 1e-9) / GRID * (1 + 1e-12);
+        this.cellH = Math.max(maxY - minY, 1e-9) / GRID * (1 + 1e-12);
+
+        int[] cellOf = new int[n];
+        this.cellStart = new int[GRID * GRID + 1];
+        for (int r = 0; r < n; r++) {
+            cellOf[r] = cell(xy[2 * r], xy[2 * r + 1]);
+            cellStart[cellOf[r] + 1]++;
+        }
+        for (int c = 0; c < GRID * GRID; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = cellStart.clone();
+        this.xy = new double[xy.length];
+        for (int r = 0; r < n; r++) {
+            int pos = next[cellOf[r]]++;
+            this.xy[2 * pos] = xy[2 * r];
+            this.xy[2 * pos + 1] = xy[2 * r + 1];
+        }
+
+        this.fx = fx.clone();
+        this.fy = fy.clone();
+        this.t = t.clone();
+        this.prices = prices.clone();
+        this.manhattan = manhattan;
+        this.best = new double[n];
+        this.mask = new long[n];
+        this.owner = new int[n];
+        this.cellMaxBest = new double[GRID * GRID];
+        this.cellMask = new long[GRID * GRID];
+        this.shares = new int[fx.length];
+        this.cost = new double[fx.length];
+        for (int c = 0; c < GRID * GRID; c++) {
+            for (int r = cellStart[c]; r < cellStart[c + 1]; r++) {
+                mask[r] = assign(r);
+                addShares(shares, mask[r], 1);
+            }
+            summarize(c);
+        }
+    }
+
+    public int residentCount() {
+        return best.length;
+    }
+
+    public int firmCount() {
+        return fx.length;
+    }
+
+    /** Координаты жителя в порядке хранения (по ячейкам сетки). */
+    public double x(int resident) {
+        return xy[2 * resident];
+    }
+
+    public double y(int resident) {
+        return xy[2 * resident + 1];
+    }
+
+    /**
+     * Фирма с наименьшими издержками для жителя (при совпадении - с меньшим номером).
+     */
+    public int owner(int resident) {
+        return owner[resident];
+    }
+
+    public int[] shares() {
+        return shares.clone();
+    }
+
+    public double[] prices() {
+        return prices.clone();
+    }
+
+    public double[] profits() {
+        double[] profits = new double[shares.length];
+        for (int i = 0; i < shares.length; i++) {
+            profits[i] = prices[i] * shares[i];
+        }
+        return profits;
+    }
+
+    /** Число жителей, пересчитанных последним изменением. */
+    public int lastTouched() {
+        return lastTouched;
+    }
+
+    /** Жители в порядке хранения; массив не копируется и не должен изменяться. */
+    double[] residents() {
+        return xy;
+    }
+
+    public void moveFirm(int firm, double x, double y) {
+        update(firm, x, y, prices[firm]);
+    }
+
+    public void setPrice(int firm, double price) {
+        update(firm, fx[firm], fy[firm], price);
+    }
+
+    public void setPrices(double[] newPrices) {
+        for (int i = 0; i < newPrices.length; i++) {
+            if (newPrices[i] != prices[i]) {
+                setPrice(i, newPrices[i]);
+            }
+        }
+    }
+
+    /**
+     * Переносит фирму в точку (x, y) с ценой {@code price} и пересчитывает затронутых жителей.
+     */
+    public void update(int firm, double x, double y, double price) {
+        fx[firm] = x;
+        fy[firm] = y;
+        prices[firm] = price;
+        long bit = 1L << firm;
+        int touched = 0;
+        for (int c = 0; c < GRID * GRID; c++) {
+            if (cellStart[c] == cellStart[c + 1]) continue;
+            if ((cellMask[c] & bit) == 0
+                    && price + t[firm] * minDistance(c, x, y) >= cellMaxBest[c] + MarketKernel.TIE_TOLERANCE + SLACK) {
+                continue;
+            }
+            boolean changed = false;
+            for (int r = cellStart[c]; r < cellStart[c + 1]; r++) {
+                double cost = price + t[firm] * MarketKernel.distance(xy[2 * r], xy[2 * r + 1], x, y, manhattan);
+                if ((mask[r] & bit) == 0 && cost - best[r] >= MarketKernel.TIE_TOLERANCE) continue;
+                addShares(shares, mask[r], -1);
+                mask[r] = assign(r);
+                addShares(shares, mask[r], 1);
+                touched++;
+                changed = true;
+            }
+            if (changed) {
+                summarize(c);
+            }
+        }
+        lastTouched = touched;
+    }
+
+    /**
+     * Полный пересчёт жителя: наименьшие издержки, лучшая фирма и маска совпадающих фирм.
+     */
+    private long assign(int r) {
+        long m = tieMask(xy[2 * r], xy[2 * r + 1], fx, fy, t, prices, manhattan, cost);
+        int argMin = 0;
+        for (int j = 1; j < fx.length; j++) {
+            if (cost[j] < cost[argMin]) argMin = j;
+        }
+        best[r] = cost[argMin];
+        owner[r] = argMin;
+        return m;
+    }
+
+    /**
+     * Маска фирм, издержки которых у жителя (x, y) отличаются от наименьших меньше чем на
+     * {@link MarketKernel#TIE_TOLERANCE}; издержки у всех фирм остаются в буфере {@code cost}.
+     */
+    static long tieMask(double x, double y, double[] fx, double[] fy, double[] t, double[] prices,
+                        boolean manhattan, double[] cost) {
+        double minCost = Double.MAX_VALUE;
+        for (int j = 0; j < fx.length; j++) {
+            cost[j] = prices[j] + t[j] * MarketKernel.distance(x, y, fx[j], fy[j], manhattan);
+            if (cost[j] < minCost) minCost = cost[j];
+        }
+        long m = 0;
+        for (int j = 0; j < fx.length; j++) {
+            if (cost[j] - minCost < MarketKernel.TIE_TOLERANCE) m |= 1L << j;
+        }
+        return m;
+    }
+
+    /** Прибавляет {@code delta} к долям фирм из маски {@code m}. */
+    static void addShares(int[] shares, long m, int delta) {
+        while (m != 0) {
+            shares[Long.numberOfTrailingZeros(m)] += delta;
+            m &= m - 1;
+        }
+    }
+
+    private void summarize(int c) {
+        double maxBest = -Double.MAX_VALUE;
+        long m = 0;
+        for (int r = cellStart[c]; r < cellStart[c + 1]; r++) {
+            maxBest = Math.max(maxBest, best[r]);
+            m |= mask[r];
+        }
+        cellMaxBest[c] = maxBest;
+        cellMask[c] = m;
+    }
+
+    /**
+     * Нижняя оценка расстояния от точки до прямоугольника ячейки.
+     */
+    private double minDistance(int c, double x, double y) {
+        double left = x0 + (c % GRID) * cellW, bottom = y0 + (c / GRID) * cellH;
+        double dx = Math.max(0, Math.max(left - x, x - left - cellW));
+        double dy = Math.max(0, Math.max(bottom - y, y - bottom - cellH));
+        return manhattan ? dx + dy : Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private int cell(double x, double y) {
+        int cx = Math.min(GRID - 1, Math.max(0, (int) ((x - x0) / cellW)));
+        int cy = Math.min(GRID - 1, Math.max(0, (int) ((y - y0) / cellH)));
+        return cy * GRID + cx;
+    }
+}
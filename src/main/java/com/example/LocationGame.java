@@ -0,0 +1,150 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Двухэтапная игра Хотеллинга: сначала фирмы выбирают местоположение, затем - цены.
+ * Фирмы по очереди перебирают узлы сетки кандидатов внутри фигуры; каждый кандидат
+ * оценивается прибылью фирмы в ценовом равновесии, которое он порождает.
+ * Кандидаты оцениваются параллельно, ценовые равновесия кэшируются по расстановке фирм
+ * и стартуют с текущих цен (warm start).
+ */
+public class LocationGame {
+
+    private final double[] xy;
+    private final boolean manhattan;
+    private final double[] candidateX;
+    private final double[] candidateY;
+    private final Map<String, double[]> equilibria = new ConcurrentHashMap<>();
+    private double tolPrice = 1e-3;
+    private int maxPriceIterations = 30;
+
+    /**
+     * @param residents жители рынка
+     * @param shape     фигура ("Circle" или "Square"), внутри которой ищутся места
+     * @param metric    метрика расстояний
+     * @param gridSteps число шагов сетки кандидатов по каждой оси
+     */
+    public LocationGame(List<double[]> residents, String shape, String metric, int gridSteps) {
+        this.xy = MarketKernel.pack(residents);
+        this.manhattan = metric.equals("Manhattan");
+        List<double[]> candidates = new ArrayList<>();
+        for (int i = 0; i <= gridSteps; i++) {
+            for (int j = 0; j <= gridSteps; j++) {
+                double x = (double) i / gridSteps;
+                double y = (double) j / gridSteps;
+                if (HotellingDuopoly.isInsideShape(x, y, shape)) {
+                    candidates.add(new double[]{x, y});
+                }
+            }
+        }
+        this.candidateX = candidates.stream().mapToDouble(c -> c[0]).toArray();
+        this.candidateY = candidates.stream().mapToDouble(c -> c[1]).toArray();
+    }
+
+    public void setTolPrice(double tolPrice) {
+        this.tolPrice = tolPrice;
+    }
+
+    public void setMaxPriceIterations(int maxPriceIterations) {
+        this.maxPriceIterations = maxPriceIterations;
+    }
+
+    /**
+     * Число ценовых равновесий, решённых и сохранённых в кэше.
+     */
+    public int cachedEquilibria() {
+        return equilibria.size();
+    }
+
+    /**
+     * Ищет равновесие по местоположению: фирмы по очереди переходят в лучший узел сетки,
+     * пока ни одна не может улучшить прибыль. По завершении координаты и цены фирм
+     * соответствуют найденному равновесию.
+     *
+     * @return число выполненных раундов
+     */
+    public int solve(List<Firm> firms, int maxRounds) {
+        int f = firms.size();
+        double[] fx = MarketKernel.xs(firms);
+        double[] fy = MarketKernel.ys(firms);
+        double[] t = MarketKernel.transportCoefs(firms);
+        double[] prices = priceEquilibrium(fx, fy, t, MarketKernel.prices(firms));
+
+        int round = 0;
+        while (round < maxRounds) {
+            round++;
+            boolean anyMove = false;
+            for (int i = 0; i < f; i++) {
+                double currentProfit = profit(i, fx, fy, t, prices);
+                final int firm = i;
+                final double[] warm = prices;
+                double[] scores = IntStream.range(0, candidateX.length).parallel()
+                        .mapToDouble(c -> score(firm, c, fx, fy, t, warm))
+                        .toArray();
+                int best = -1;
+                double bestProfit = currentProfit;
+                for (int c = 0; c < scores.length; c++) {
+                    if (scores[c] > bestProfit + 1e-9) {
+                        bestProfit = scores[c];
+                        best = c;
+                    }
+                }
+                if (best >= 0) {
+                    fx[i] = candidateX[best];
+                    fy[i] = candidateY[best];
+                    prices = priceEquilibrium(fx, fy, t, prices);
+                    anyMove = true;
+                }
+            }
+            if (!anyMove) break;
+        }
+
+        for (int i = 0; i < f; i++) {
+            Firm firm = firms.get(i);
+            firm.x = fx[i];
+            firm.y = fy[i];
+            firm.price = prices[i];
+        }
+        return round;
+    }
+
+    /**
+     * Прибыль фирмы {@code firm} в ценовом равновесии, если она переместится в кандидата {@code c}.
+     */
+    private double score(int firm, int c, double[] fx, double[] fy, double[] t, double[] warm) {
+        double[] cx = fx.clone();
+        double[] cy = fy.clone();
+        cx[firm] = candidateX[c];
+        cy[firm] = candidateY[c];
+        double[] prices = priceEquilibrium(cx, cy, t, warm);
+        return profit(firm, cx, cy, t, prices);
+    }
+
+    private double[] priceEquilibrium(double[] fx, double[] fy, double[] t, double[] warm) {
+        String key = key(fx, fy, t);
+        double[] cached = equilibria.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        double[] prices = MarketKernel.bestResponseDynamics(xy, fx, fy, t, warm, manhattan,
+                tolPrice, maxPriceIterations);
+        double[] previous = equilibria.putIfAbsent(key, prices);
+        return previous != null ? previous : prices;
+    }
+
+    private double profit(int firm, double[] fx, double[] fy, double[] t, double[] prices) {
+        return prices[firm] * MarketKernel.share(firm, xy, fx, fy, t, prices, manhattan);
+    }
+
+    private static String key(double[] fx, double[] fy, double[] t) {
+        return Arrays.toString(fx) + Arrays.toString(fy) + Arrays.toString(t);
+    }
+}
@@ -0,0 +1,350 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Гладкий спрос: мультиномиальный логит по издержкам. Житель r выбирает фирму i с вероятностью
+ * s_ir = exp(-c_ir / μ) / (exp(-c0 / μ) + Σ_j exp(-c_jr / μ)), где c_ir = p_i + t_i * d_ir,
+ * μ - масштаб (чем меньше, тем ближе к выбору самой дешёвой фирмы), а слагаемое с c0 -
+ * необязательный отказ от покупки. Ожидаемая прибыль p_i * Σ_r s_ir гладкая, поэтому
+ * равновесие ищется методом Ньютона по условиям первого порядка с аналитическими градиентом
+ * и якобианом: ∂s_ir/∂p_j = s_ir s_jr / μ при j != i и -s_ir (1 - s_ir) / μ при j = i.
+ * <p>
+ * При μ = 0 модель совпадает с исходной (доли {@link MarketKernel#shares}, равновесие -
+ * best-response dynamics); {@link #continuation} уменьшает μ, стартуя каждый раз
+ * с предыдущих цен, и последним шагом решает этот предел.
+ */
+public class LogitDemand {
+
+    /** Число жителей в одной порции параллельного суммирования. */
+    private static final int CHUNK = 1 << 13;
+
+    private final double[] xy;
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final boolean manhattan;
+    private final double scale;
+    private double outsideCost = Double.POSITIVE_INFINITY;
+    private double tolPrice = 1e-8;
+    private int maxIterations = 50;
+
+    public LogitDemand(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan, double scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("Масштаб логита должен быть неотрицательным: " + scale);
+        }
+        this.xy = xy;
+        this.fx = fx;
+        this.fy = fy;
+        this.t = t;
+        this.manhattan = manhattan;
+        this.scale = scale;
+    }
+
+    /**
+     * Издержки отказа от покупки; по умолчанию бесконечны (отказа нет).
+     */
+    public void setOutsideCost(double outsideCost) {
+        this.outsideCost = outsideCost;
+    }
+
+    public void setTolPrice(double tolPrice) {
+        this.tolPrice = tolPrice;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public double scale() {
+        return scale;
+    }
+
+    /**
+     * Та же модель с другим масштабом.
+     */
+    public LogitDemand withScale(double newScale) {
+        LogitDemand copy = new LogitDemand(xy, fx, fy, t, manhattan, newScale);
+        copy.outsideCost = outsideCost;
+        copy.tolPrice = tolPrice;
+        copy.maxIterations = maxIterations;
+        return copy;
+    }
+
+    /**
+     * Ожидаемый спрос на каждую фирму; при μ = 0 - доли исходной модели.
+     */
+    public double[] demand(double[] prices) {
+        if (scale == 0) {
+            int[] shares = MarketKernel.shares(xy, fx, fy, t, prices, manhattan);
+            return IntStream.of(shares).asDoubleStream().toArray();
+        }
+        return moments(prices, false).demand;
+    }
+
+    public double[] profits(double[] prices) {
+        double[] demand = demand(prices);
+        for (int i = 0; i < demand.length; i++) {
+            demand[i] *= prices[i];
+        }
+        return demand;
+    }
+
+    /**
+     * Градиент прибыли по собственной цене: G_i = Σ_r [s_ir - (p_i / μ) s_ir (1 - s_ir)].
+     */
+    public double[] gradient(double[] prices) {
+        return moments(prices, false).gradient(prices, scale);
+    }
+
+    /**
+     * Якобиан градиента: ∂G_i / ∂p_j.
+     */
+    public double[][] jacobian(double[] prices) {
+        return moments(prices, true).jacobian(prices, scale);
+    }
+
+    /**
+     * Равновесие методом Ньютона по G(p) = 0 в границах цен: шаг уменьшается вдвое, пока норма
+     * градиента не убывает; фирма на границе, градиент которой выталкивает за границу, фиксируется.
+     */
+    public Solution solve(double[] startPrices) {
+        int f = startPrices.length;
+        if (scale == 0) {
+            return solveBestResponse(startPrices);
+        }
+        double[] prices = clamp(startPrices.clone());
+        Moments m = moments(prices, true);
+        double[] g = m.gradient(prices, scale);
+        for (int iter = 1; iter <= maxIterations; iter++) {
+            boolean[] fixed = new boolean[f];
+            for (int i = 0; i < f; i++) {
+                fixed[i] = (prices[i] <= HotellingDuopoly.MIN_PRICE && g[i] < 0)
+                        || (prices[i] >= HotellingDuopoly.MAX_PRICE && g[i] > 0);
+            }
+            double[][] jac = m.jacobian(prices, scale);
+            double[] rhs = new double[f];
+            for (int i = 0; i < f; i++) {
+                rhs[i] = fixed[i] ? 0 : -g[i];
+                if (fixed[i]) {
+                    Arrays.fill(jac[i], 0);
+                    jac[i][i] = 1;
+                }
+            }
+            double[] step = MarketKernel.solveLinear(jac, rhs);
+            double merit = norm(g, fixed);
+            double lambda = 1;
+            double[] next = prices;
+            Moments nextMoments = m;
+            double[] nextG = g;
+            for (int halving = 0; halving < 30; halving++) {
+                next = new double[f];
+                for (int i = 0; i < f; i++) {
+                    next[i] = prices[i] + lambda * step[i];
+                }
+                clamp(next);
+                nextMoments = moments(next, true);
+                nextG = nextMoments.gradient(next, scale);
+                if (norm(nextG, fixed) < merit) break;
+                lambda /= 2;
+            }
+            double change = 0;
+            for (int i = 0; i < f; i++) {
+                change = Math.max(change, Math.abs(next[i] - prices[i]));
+            }
+            prices = next;
+            m = nextMoments;
+            g = nextG;
+            if (change < tolPrice) {
+                return new Solution(prices, m.demand, iter, true);
+            }
+        }
+        return new Solution(prices, m.demand, maxIterations, false);
+    }
+
+    /**
+     * Исходная модель (μ = 0): градиента нет, равновесие ищется best-response dynamics с точностью
+     * {@link HotellingDuopoly#PRICE_TOLERANCE}. Сходимость - раунд, в котором ни одна цена не сдвинулась
+     * больше этой точности.
+     */
+    private Solution solveBestResponse(double[] startPrices) {
+        double tol = HotellingDuopoly.PRICE_TOLERANCE;
+        double[] prices = startPrices.clone();
+        for (int iter = 1; iter <= maxIterations; iter++) {
+            double change = 0;
+            for (int i = 0; i < prices.length; i++) {
+                double bestPrice = MarketKernel.ternarySearchPrice(i, xy, fx, fy, t, prices, manhattan, tol / 2);
+                change = Math.max(change, Math.abs(bestPrice - prices[i]));
+                if (Math.abs(bestPrice - prices[i]) > tol) {
+                    prices[i] = bestPrice;
+                }
+            }
+            if (change <= tol) {
+                return new Solution(prices, demand(prices), iter, true);
+            }
+        }
+        return new Solution(prices, demand(prices), maxIterations, false);
+    }
+
+    /**
+     * Продолжение по масштабу: равновесие при μ, μ/2, μ/4, ... до {@code minScale}, каждый раз
+     * со стартом из предыдущих цен; последний элемент - равновесие исходной модели (μ = 0).
+     */
+    public Solution[] continuation(double[] startPrices, double minScale) {
+        int steps = 1;
+        for (double mu = scale; mu / 2 >= minScale; mu /= 2) {
+            steps++;
+        }
+        Solution[] path = new Solution[steps + 1];
+        double[] prices = startPrices;
+        double mu = scale;
+        for (int k = 0; k < steps; k++, mu /= 2) {
+            path[k] = withScale(mu).solve(prices);
+            prices = path[k].prices;
+        }
+        path[steps] = withScale(0).solve(prices);
+        return path;
+    }
+
+    private static double[] clamp(double[] prices) {
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = Math.min(HotellingDuopoly.MAX_PRICE, Math.max(HotellingDuopoly.MIN_PRICE, prices[i]));
+        }
+        return prices;
+    }
+
+    private static double norm(double[] g, boolean[] fixed) {
+        double sum = 0;
+        for (int i = 0; i < g.length; i++) {
+            if (!fixed[i]) sum += g[i] * g[i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Суммы по жителям, из которых собираются спрос, градиент и якобиан. Жители суммируются
+     * параллельно порциями; издержки сдвигаются на минимум жителя, чтобы экспоненты не обнулялись.
+     */
+    private Moments moments(double[] prices, boolean pairs) {
+        int n = xy.length / 2;
+        int f = prices.length;
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            Moments part = new Moments(f, pairs);
+            double[] cost = new double[f];
+            double[] s = new double[f];
+            for (int r = c * CHUNK; r < Math.min(n, (c + 1) * CHUNK); r++) {
+                double min = outsideCost;
+                for (int j = 0; j < f; j++) {
+                    cost[j] = prices[j] + t[j] * MarketKernel.distance(xy[2 * r], xy[2 * r + 1], fx[j], fy[j], manhattan);
+                    min = Math.min(min, cost[j]);
+                }
+                double total = Double.isInfinite(outsideCost) ? 0 : Math.exp(-(outsideCost - min) / scale);
+                for (int j = 0; j < f; j++) {
+                    s[j] = Math.exp(-(cost[j] - min) / scale);
+                    total += s[j];
+                }
+                for (int i = 0; i < f; i++) {
+                    s[i] /= total;
+                    part.demand[i] += s[i];
+                    part.variance[i] += s[i] * (1 - s[i]);
+                    part.skew[i] += s[i] * (1 - s[i]) * (1 - 2 * s[i]);
+                }
+                if (pairs) {
+                    for (int i = 0; i < f; i++) {
+                        for (int j = 0; j < f; j++) {
+                            if (i == j) continue;
+                            part.cross[i][j] += s[i] * s[j];
+                            part.crossSkew[i][j] += s[i] * s[j] * (1 - 2 * s[i]);
+                        }
+                    }
+                }
+            }
+            return part;
+        }).reduce(new Moments(f, pairs), Moments::plus);
+    }
+
+    /**
+     * Суммы по жителям: Σ s_i, Σ s_i (1 - s_i), Σ s_i (1 - s_i)(1 - 2 s_i), Σ s_i s_j, Σ s_i s_j (1 - 2 s_i).
+     */
+    private static final class Moments {
+        final double[] demand;
+        final double[] variance;
+        final double[] skew;
+        final double[][] cross;
+        final double[][] crossSkew;
+
+        Moments(int f, boolean pairs) {
+            demand = new double[f];
+            variance = new double[f];
+            skew = new double[f];
+            cross = pairs ? new double[f][f] : null;
+            crossSkew = pairs ? new double[f][f] : null;
+        }
+
+        Moments plus(Moments other) {
+            int f = demand.length;
+            Moments sum = new Moments(f, cross != null);
+            for (int i = 0; i < f; i++) {
+                sum.demand[i] = demand[i] + other.demand[i];
+                sum.variance[i] = variance[i] + other.variance[i];
+                sum.skew[i] = skew[i] + other.skew[i];
+                if (cross != null) {
+                    for (int j = 0; j < f; j++) {
+                        sum.cross[i][j] = cross[i][j] + other.cross[i][j];
+                        sum.crossSkew[i][j] = crossSkew[i][j] + other.crossSkew[i][j];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        double[] gradient(double[] prices, double mu) {
+            double[] g = new double[demand.length];
+            for (int i = 0; i < g.length; i++) {
+                g[i] = demand[i] - prices[i] / mu * variance[i];
+            }
+            return g;
+        }
+
+        double[][] jacobian(double[] prices, double mu) {
+            int f = demand.length;
+            double[][] jac = new double[f][f];
+            for (int i = 0; i < f; i++) {
+                double a = prices[i] / mu;
+                for (int j = 0; j < f; j++) {
+                    jac[i][j] = i == j
+                            ? -(2 * variance[i] - a * skew[i]) / mu
+                            : (cross[i][j] - a * crossSkew[i][j]) / mu;
+                }
+            }
+            return jac;
+        }
+    }
+
+    /**
+     * Найденные цены, ожидаемый спрос, число итераций Ньютона и признак сходимости.
+     */
+    public static class Solution {
+        public final double[] prices;
+        public final double[] demand;
+        public final int iterations;
+        public final boolean converged;
+
+        Solution(double[] prices, double[] demand, int iterations, boolean converged) {
+            this.prices = prices;
+            this.demand = demand;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+
+        public double[] profits() {
+            double[] profits = new double[prices.length];
+            for (int i = 0; i < prices.length; i++) {
+                profits[i] = prices[i] * demand[i];
+            }
+            return profits;
+        }
+    }
+}
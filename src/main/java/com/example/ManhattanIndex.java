@@ -0,0 +1,210 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Быстрый подсчёт долей рынка для метрики Manhattan. После поворота на 45 градусов
+ * (u = x + y, v = x - y) расстояние |dx| + |dy| равно max(|du|, |dv|), и L1-шары становятся
+ * квадратами со сторонами вдоль осей. Жители раскладываются по сетке ячеек в координатах (u, v),
+ * по которой строится таблица префиксных сумм (summed-area table): число жителей в любом
+ * прямоугольнике ячеек считается за O(1).
+ * <p>
+ * Запрос долей спускается по квадродереву ячеек. Для узла по каждой фирме оцениваются
+ * наименьшие и наибольшие издержки на прямоугольнике; фирмы, которые нигде в узле не могут
+ * оказаться среди лучших, отбрасываются. Если осталась одна фирма, ей засчитываются все жители
+ * узла по таблице сумм; иначе узел делится, а в неделимой ячейке жители проверяются напрямую.
+ * Поэтому полный перебор идёт только по ячейкам на границах рынков, а результат совпадает
+ * с {@link MarketKernel#shares} с тем же допуском совпадения издержек.
+ */
+public final class ManhattanIndex {
+
+    /** Запас на ошибки округления при отсечении фирм по границам издержек. */
+    private static final double SLACK = 1e-9;
+
+    private final int bins;
+    private final double uMin;
+    private final double vMin;
+    private final double cellU;
+    private final double cellV;
+    private final int[] sat;
+    private final int[] binStart;
+    private final double[] sorted;
+
+    /**
+     * Строит индекс по плоскому массиву жителей {x0, y0, x1, y1, ...}.
+     */
+    public ManhattanIndex(double[] xy) {
+        int n = xy.length / 2;
+        int b = 8;
+        while (b < 1024 && (long) b * b * 8 < n) {
+            b *= 2;
+        }
+        this.bins = b;
+        double uLo = Double.MAX_VALUE, uHi = -Double.MAX_VALUE, vLo = Double.MAX_VALUE, vHi = -Double.MAX_VALUE;
+        for (int r = 0; r < n; r++) {
+            double u = xy[2 * r] + xy[2 * r + 1];
+            double v = xy[2 * r] - xy[2 * r + 1];
+            uLo = Math.min(uLo, u);
+            uHi = Math.max(uHi, u);
+            vLo = Math.min(vLo, v);
+            vHi = Math.max(vHi, v);
+        }
+        if (n == 0) {
+            uLo = uHi = vLo = vHi = 0;
+        }
+        this.uMin = uLo;
+        this.vMin = vLo;
+        this.cellU = Math.max(uHi - uLo, 1e-9) / b * (1 + 1e-12);
+        this.cellV = Math.max(vHi - vLo, 1e-9) / b * (1 + 1e-12);
+
+        int[] binOf = new int[n];
+        int[] counts = new int[b * b];
+        for (int r = 0; r < n; r++) {
+            binOf[r] = bin(xy[2 * r], xy[2 * r + 1]);
+            counts[binOf[r]]++;
+        }
+        this.binStart = new int[b * b + 1];
+        for (int i = 0; i < b * b; i++) {
+            binStart[i + 1] = binStart[i] + counts[i];
+        }
+        int[] next = binStart.clone();
+        this.sorted = new double[xy.length];
+        for (int r = 0; r < n; r++) {
+            int pos = next[binOf[r]]++;
+            sorted[2 * pos] = xy[2 * r];
+            sorted[2 * pos + 1] = xy[2 * r + 1];
+        }
+        this.sat = new int[(b + 1) * (b + 1)];
+        for (int i = 0; i < b; i++) {
+            int row = 0;
+            for (int j = 0; j < b; j++) {
+                row += counts[i * b + j];
+                sat[(i + 1) * (b + 1) + j + 1] = sat[i * (b + 1) + j + 1] + row;
+            }
+        }
+    }
+
+    public int residentCount() {
+        return sorted.length / 2;
+    }
+
+    /** Число ячеек сетки по каждой оси. */
+    int bins() {
+        return bins;
+    }
+
+    /**
+     * Число жителей в прямоугольнике ячеек [u0, u1) x [v0, v1).
+     */
+    int count(int u0, int u1, int v0, int v1) {
+        int w = bins + 1;
+        return sat[u1 * w + v1] - sat[u0 * w + v1] - sat[u1 * w + v0] + sat[u0 * w + v0];
+    }
+
+    /**
+     * Доли рынка всех фирм; совпадают с {@link MarketKernel#shares} для метрики Manhattan.
+     */
+    public int[] shares(double[] fx, double[] fy, double[] t, double[] prices) {
+        int f = fx.length;
+        double[] fu = new double[f];
+        double[] fv = new double[f];
+        for (int j = 0; j < f; j++) {
+            fu[j] = fx[j] + fy[j];
+            fv[j] = fx[j] - fy[j];
+        }
+        int[] all = IntStream.range(0, f).toArray();
+        if (residentCount() < MarketKernel.PARALLEL_THRESHOLD) {
+            int[] out = new int[f];
+            query(0, bins, 0, bins, all, fx, fy, fu, fv, t, prices, out);
+            return out;
+        }
+        int quarter = bins / 4;
+        return IntStream.range(0, 16).parallel()
+                .mapToObj(q -> {
+                    int[] part = new int[f];
+                    int u0 = (q / 4) * quarter, v0 = (q % 4) * quarter;
+                    query(u0, u0 + quarter, v0, v0 + quarter, all, fx, fy, fu, fv, t, prices, part);
+                    return part;
+                })
+                .reduce(new int[f], (a, c) -> {
+                    int[] s = new int[f];
+                    for (int j = 0; j < f; j++) s[j] = a[j] + c[j];
+                    return s;
+                });
+    }
+
+    private void query(int u0, int u1, int v0, int v1, int[] active, double[] fx, double[] fy,
+                       double[] fu, double[] fv, double[] t, double[] prices, int[] out) {
+        int count = count(u0, u1, v0, v1);
+        if (count == 0) {
+            return;
+        }
+        double uLo = uMin + u0 * cellU, uHi = uMin + u1 * cellU;
+        double vLo = vMin + v0 * cellV, vHi = vMin + v1 * cellV;
+        int a = active.length;
+        double[] low = new double[a];
+        double minHigh = Double.MAX_VALUE;
+        for (int k = 0; k < a; k++) {
+            int j = active[k];
+            double near = Math.max(gap(fu[j], uLo, uHi), gap(fv[j], vLo, vHi));
+            double far = Math.max(Math.max(Math.abs(fu[j] - uLo), Math.abs(fu[j] - uHi)),
+                    Math.max(Math.abs(fv[j] - vLo), Math.abs(fv[j] - vHi)));
+            low[k] = prices[j] + t[j] * near;
+            minHigh = Math.min(minHigh, prices[j] + t[j] * far);
+        }
+        int kept = 0;
+        int[] next = new int[a];
+        for (int k = 0; k < a; k++) {
+            if (low[k] - minHigh < MarketKernel.TIE_TOLERANCE + SLACK) {
+                next[kept++] = active[k];
+            }
+        }
+        if (kept == 1) {
+            out[next[0]] += count;
+            return;
+        }
+        int[] candidates = kept == a ? active : Arrays.copyOf(next, kept);
+        if (u1 - u0 == 1 && v1 - v0 == 1) {
+            scan(u0 * bins + v0, candidates, fx, fy, t, prices, out);
+            return;
+        }
+        if (u1 - u0 >= v1 - v0) {
+            int mid = (u0 + u1) >>> 1;
+            query(u0, mid, v0, v1, candidates, fx, fy, fu, fv, t, prices, out);
+            query(mid, u1, v0, v1, candidates, fx, fy, fu, fv, t, prices, out);
+        } else {
+            int mid = (v0 + v1) >>> 1;
+            query(u0, u1, v0, mid, candidates, fx, fy, fu, fv, t, prices, out);
+            query(u0, u1, mid, v1, candidates, fx, fy, fu, fv, t, prices, out);
+        }
+    }
+
+    private void scan(int bin, int[] candidates, double[] fx, double[] fy, double[] t, double[] prices, int[] out) {
+        double[] cost = new double[candidates.length];
+        for (int r = binStart[bin]; r < binStart[bin + 1]; r++) {
+            double x = sorted[2 * r];
+            double y = sorted[2 * r + 1];
+            double minCost = Double.MAX_VALUE;
+            for (int k = 0; k < candidates.length; k++) {
+                int j = candidates[k];
+                double c = prices[j] + t[j] * MarketKernel.distance(x, y, fx[j], fy[j], true);
+                cost[k] = c;
+                if (c < minCost) minCost = c;
+            }
+            for (int k = 0; k < candidates.length; k++) {
+                if (cost[k] - minCost < MarketKernel.TIE_TOLERANCE) out[candidates[k]]++;
+            }
+        }
+    }
+
+    private int bin(double x, double y) {
+        int bu = Math.min(bins - 1, Math.max(0, (int) ((x + y - uMin) / cellU)));
+        int bv = Math.min(bins - 1, Math.max(0, (int) ((x - y - vMin) / cellV)));
+        return bu * bins + bv;
+    }
+
+    private static double gap(double value, double lo, double hi) {
+        return Math.max(0, Math.max(lo - value, value - hi));
+    }
+}
@@ -0,0 +1,278 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Неизменяемый снимок рынка: расположение фирм, транспортные коэффициенты и жители.
+ * Цены передаются в каждый вызов отдельным вектором, поэтому оценки прибыли, проверки
+ * отклонений и решатели могут работать одновременно на одном снимке без копирования
+ * фирм и без блокировок. Входные векторы цен не изменяются.
+ */
+public final class MarketEvaluator implements ShareOracle {
+
+    /** С какого числа жителей доли для метрики Manhattan считаются через {@link ManhattanIndex}. */
+    static final int INDEX_THRESHOLD = 1 << 12;
+
+    private final double[] xy;
+    private final float[] compactXy;
+    private final OffHeapResidents offHeap;
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final boolean manhattan;
+    private final ManhattanIndex index;
+    private final RoadNetwork.Market road;
+    private final CapacitatedAssignment capacitated;
+    /** Теневые цены мощности, с которых стартует каждое распределение; null - холодный старт. */
+    private final double[] shadowPrices;
+    private final LongAdder evaluations;
+    /** Ставки аукциона во всех распределениях с ограничением мощности на этом снимке. */
+    private final LongAdder bids;
+
+    private MarketEvaluator(double[] xy, float[] compactXy, double[] fx, double[] fy, double[] t, boolean manhattan) {
+        this(xy, compactXy, null, fx, fy, t, manhattan, null, null);
+    }
+
+    private MarketEvaluator(double[] xy, float[] compactXy, OffHeapResidents offHeap, double[] fx, double[] fy,
+                            double[] t, boolean manhattan, RoadNetwork.Market road, CapacitatedAssignment capacitated) {
+        this.xy = xy;
+        this.compactXy = compactXy;
+        this.offHeap = offHeap;
+        this.fx = fx;
+        this.fy = fy;
+        this.t = t;
+        this.manhattan = manhattan;
+        this.index = manhattan && capacitated == null && xy != null && xy.length / 2 >= INDEX_THRESHOLD
+                ? new ManhattanIndex(xy) : null;
+        this.road = road;
+        this.capacitated = capacitated;
+        this.shadowPrices = null;
+        this.evaluations = new LongAdder();
+        this.bids = new LongAdder();
+    }
+
+    /**
+     * Тот же снимок с другим тёплым стартом распределения; счётчики вычислений и ставок общие.
+     */
+    private MarketEvaluator(MarketEvaluator base, double[] shadowPrices) {
+        this.xy = base.xy;
+        this.compactXy = base.compactXy;
+        this.offHeap = base.offHeap;
+        this.fx = base.fx;
+        this.fy = base.fy;
+        this.t = base.t;
+        this.manhattan = base.manhattan;
+        this.index = base.index;
+        this.road = base.road;
+        this.capacitated = base.capacitated;
+        this.shadowPrices = shadowPrices;
+        this.evaluations = base.evaluations;
+        this.bids = base.bids;
+    }
+
+    /**
+     * Снимок фирм и жителей. Последующие изменения объектов {@link Firm} на снимок не влияют.
+     * Если у какой-либо фирмы мощность конечна, доли считаются с ограничениями мощности.
+     */
+    public MarketEvaluator(List<Firm> firms, List<double[]> residents, String metric) {
+        this(MarketKernel.pack(residents), firms, metric.equals("Manhattan"));
+    }
+
+    private MarketEvaluator(double[] xy, List<Firm> firms, boolean manhattan) {
+        this(xy, null, null, MarketKernel.xs(firms), MarketKernel.ys(firms), MarketKernel.transportCoefs(firms), manhattan,
+                null, capacitated(xy, firms, manhattan));
+    }
+
+    private static CapacitatedAssignment capacitated(double[] xy, List<Firm> firms, boolean manhattan) {
+        double[] capacity = MarketKernel.capacities(firms);
+        if (Arrays.stream(capacity).allMatch(Double::isInfinite)) {
+            return null;
+        }
+        return new CapacitatedAssignment(xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                MarketKernel.transportCoefs(firms), capacity, manhattan);
+    }
+
+    /**
+     * Снимок по упакованным массивам; массивы не копируются и не должны изменяться после вызова.
+     */
+    public static MarketEvaluator of(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan) {
+        return new MarketEvaluator(xy, null, fx, fy, t, manhattan);
+    }
+
+    /**
+     * Снимок, считающий доли по жителям в одинарной точности (компактный режим).
+     */
+    public static MarketEvaluator compact(float[] compactXy, double[] fx, double[] fy, double[] t, boolean manhattan) {
+        return new MarketEvaluator(null, compactXy, fx, fy, t, manhattan);
+    }
+
+    /**
+     * Снимок по жителям вне кучи: доли считаются ядрами {@link MarketKernel} прямо по сегменту.
+     * Снимок действителен, пока {@code residents} не закрыты.
+     */
+    public static MarketEvaluator offHeap(OffHeapResidents residents, double[] fx, double[] fy, double[] t,
+                                          boolean manhattan) {
+        return new MarketEvaluator(null, null, residents, fx, fy, t, manhattan, null, null);
+    }
+
+    /**
+     * Снимок рынка на дорожной сети: расстояния - длины кратчайших путей из {@code market}.
+     * Координаты фирм нужны только для {@link #firmCount()} и должны соответствовать рынку.
+     */
+    public static MarketEvaluator road(RoadNetwork.Market market, double[] fx, double[] fy, double[] t) {
+        return new MarketEvaluator(null, null, null, fx, fy, t, false, market, null);
+    }
+
+    /**
+     * Снимок с ограниченной мощностью фирм ({@code +inf} - без ограничения): доли - число
+     * обслуженных жителей в распределении {@link CapacitatedAssignment}. Тёплый старт задаётся
+     * явно через {@link #warmStarted}, поэтому доли зависят только от цен и снимка.
+     */
+    public static MarketEvaluator capacitated(double[] xy, double[] fx, double[] fy, double[] t, double[] capacity,
+                                              boolean manhattan) {
+        return new MarketEvaluator(xy, null, null, fx, fy, t, manhattan, null,
+                new CapacitatedAssignment(xy, fx, fy, t, capacity, manhattan));
+    }
+
+    /**
+     * Снимок, распределения которого стартуют с теневых цен мощности при ценах {@code prices}.
+     * Распределение при {@code prices} само стартует с теневых цен этого снимка, поэтому решатель
+     * передаёт результат в следующую итерацию: {@code market = market.warmStarted(prices)}.
+     * Без ограничений мощности возвращает этот же снимок.
+     */
+    public MarketEvaluator warmStarted(double[] prices) {
+        if (capacitated == null) {
+            return this;
+        }
+        return new MarketEvaluator(this, assign(prices).shadowPrices);
+    }
+
+    public int firmCount() {
+        return fx.length;
+    }
+
+    /** Число вычислений долей на этом снимке (счётчик для трассировки решателей). */
+    public long evaluations() {
+        return evaluations.sum();
+    }
+
+    /** Число ставок аукциона в распределениях с ограничением мощности на этом снимке. */
+    public long bids() {
+        return bids.sum();
+    }
+
+    public int residentCount() {
+        if (road != null) {
+            return road.residentCount();
+        }
+        if (offHeap != null) {
+            return Math.toIntExact(offHeap.count());
+        }
+        return compactXy != null ? compactXy.length / 2 : xy.length / 2;
+    }
+
+    /**
+     * Доли рынка всех фирм при векторе цен {@code prices}.
+     */
+    public int[] shares(double[] prices) {
+        evaluations.increment();
+        if (capacitated != null) {
+            return assign(prices).served;
+        }
+        if (road != null) {
+            return road.shares(t, prices);
+        }
+        if (index != null) {
+            return index.shares(fx, fy, t, prices);
+        }
+        if (offHeap != null) {
+            return MarketKernel.shares(offHeap, fx, fy, t, prices, manhattan);
+        }
+        return compactXy != null
+                ? MarketKernel.shares(compactXy, fx, fy, t, prices, manhattan)
+                : MarketKernel.shares(xy, fx, fy, t, prices, manhattan);
+    }
+
+    @Override
+    public int[][] shares(double[][] priceVectors) {
+        return Arrays.stream(priceVectors).parallel().map(this::shares).toArray(int[][]::new);
+    }
+
+    public int share(int firm, double[] prices) {
+        evaluations.increment();
+        if (capacitated != null) {
+            return assign(prices).served[firm];
+        }
+        if (road != null) {
+            return road.share(firm, t, prices);
+        }
+        if (index != null) {
+            return index.shares(fx, fy, t, prices)[firm];
+        }
+        if (offHeap != null) {
+            return MarketKernel.share(firm, offHeap, fx, fy, t, prices, manhattan);
+        }
+        return compactXy != null
+                ? MarketKernel.share(firm, compactXy, fx, fy, t, prices, manhattan)
+                : MarketKernel.share(firm, xy, fx, fy, t, prices, manhattan);
+    }
+
+    /**
+     * Прибыль фирмы: цена * доля рынка.
+     */
+    public double profit(int firm, double[] prices) {
+        return prices[firm] * share(firm, prices);
+    }
+
+    public double[] profits(double[] prices) {
+        int[] shares = shares(prices);
+        double[] profits = new double[shares.length];
+        for (int i = 0; i < shares.length; i++) {
+            profits[i] = prices[i] * shares[i];
+        }
+        return profits;
+    }
+
+    /**
+     * Тернарный поиск лучшей цены фирмы при ценах конкурентов из {@code prices}.
+     */
+    public double ternarySearchPrice(int firm, double[] prices) {
+        double[] work = prices.clone();
+        return MarketKernel.ternarySearch(HotellingDuopoly.MIN_PRICE, HotellingDuopoly.MAX_PRICE, 0, price -> {
+            work[firm] = price;
+            return profit(firm, work);
+        });
+    }
+
+    /**
+     * Вектор цен, в котором цена фирмы {@code firm} заменена на {@code price}.
+     */
+    public static double[] withPrice(double[] prices, int firm, double price) {
+        double[] copy = prices.clone();
+        copy[firm] = price;
+        return copy;
+    }
+
+    /**
+     * Проверяет, что ни одна фирма не может увеличить прибыль больше чем на {@code tolImprovement},
+     * отклонившись к цене тернарного поиска. Отклонения фирм проверяются параллельно.
+     */
+    public boolean isNashEquilibrium(double[] prices, double tolImprovement) {
+        return IntStream.range(0, firmCount()).parallel().allMatch(i -> {
+            double currentProfit = profit(i, prices);
+            double bestProfit = profit(i, withPrice(prices, i, ternarySearchPrice(i, prices)));
+            return bestProfit <= currentProfit + tolImprovement;
+        });
+    }
+
+    private CapacitatedAssignment.Assignment assign(double[] prices) {
+        CapacitatedAssignment.Assignment assignment = capacitated.assign(prices, shadowPrices);
+        bids.add(assignment.bids);
+        return assignment;
+    }
+}
\ No newline at end of file
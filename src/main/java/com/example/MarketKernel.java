@@ -0,0 +1,477 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Вычислительное ядро модели: подсчёт долей рынка по упакованному массиву жителей.
+ * Жители хранятся как плоский массив {x0, y0, x1, y1, ...}, фирмы - как параллельные массивы
+ * координат, цен и транспортных коэффициентов. Методы не изменяют входные данные и безопасны
+ * для одновременного вызова из разных потоков.
+ * <p>
+ * Компактный режим хранит жителей в {@code float[]} и считает издержки в одинарной точности:
+ * вдвое меньше памяти и трафика на жителя ценой более широкого допуска совпадения издержек
+ * ({@link #FLOAT_TIE_TOLERANCE}).
+ * <p>
+ * Жители вне кучи ({@link OffHeapResidents}) читаются ядром прямо из {@link MemorySegment}.
+ */
+public final class MarketKernel {
+
+    /** Допуск, в пределах которого издержки жителя у двух фирм считаются равными. */
+    public static final double TIE_TOLERANCE = 1e-9;
+
+    /**
+     * Допуск совпадения издержек в компактном режиме. Издержки не превышают
+     * MAX_PRICE + t * диаметр, то есть около 12 при t = 1; шаг float в этом диапазоне около 1e-6,
+     * а вычисление издержек накапливает несколько ошибок округления. Допуск 1e-5 покрывает
+     * их с запасом и остаётся на два порядка меньше точности цен в решателях (1e-3).
+     */
+    public static final float FLOAT_TIE_TOLERANCE = 1e-5f;
+
+    /** Минимальный запас допуска в шагах float относительно максимальных издержек. */
+    static final int MIN_TOLERANCE_ULPS = 8;
+
+    /** Минимальное число жителей, начиная с которого подсчёт долей распараллеливается. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final int CHUNK = 1 << 14;
+
+    private MarketKernel() {
+    }
+
+    /**
+     * Упаковывает список жителей в плоский массив координат.
+     */
+    public static double[] pack(List<double[]> residents) {
+        double[] xy = new double[residents.size() * 2];
+        int k = 0;
+        for (double[] r : residents) {
+            xy[k++] = r[0];
+            xy[k++] = r[1];
+        }
+        return xy;
+    }
+
+    /**
+     * Компактная копия жителей в одинарной точности.
+     */
+    public static float[] compact(double[] xy) {
+        float[] packed = new float[xy.length];
+        for (int i = 0; i < xy.length; i++) {
+            packed[i] = (float) xy[i];
+        }
+        return packed;
+    }
+
+    /**
+     * Проверяет, что допуск совпадения издержек в одинарной точности не тоньше
+     * ошибки округления при издержках до {@code maxCost} и не грубее точности цен.
+     *
+     * @throws IllegalArgumentException если допуск вне допустимого диапазона
+     */
+    public static void validateTieTolerance(float tolerance, double maxCost) {
+        float minimum = MIN_TOLERANCE_ULPS * Math.ulp((float) maxCost);
+        if (!(tolerance >= minimum)) {
+            throw new IllegalArgumentException(String.format(
+                    "Допуск %.3g меньше %d шагов float (%.3g) при издержках до %.3g",
+                    tolerance, MIN_TOLERANCE_ULPS, minimum, maxCost));
+        }
+        if (tolerance > 1e-4f) {
+            throw new IllegalArgumentException(String.format(
+                    "Допуск %.3g сравним с точностью цен решателей", tolerance));
+        }
+    }
+
+    /**
+     * Верхняя оценка издержек жителя в единичной фигуре при данных ценах и коэффициентах.
+     */
+    static double maxCost(double[] t, double[] prices, boolean manhattan) {
+        double diameter = manhattan ? 2.0 : Math.sqrt(2.0);
+        double max = 0;
+        for (int j = 0; j < t.length; j++) {
+            max = Math.max(max, Math.max(prices[j], HotellingDuopoly.MAX_PRICE) + t[j] * diameter);
+        }
+        return max;
+    }
+
+    /**
+     * Доли рынка всех фирм за один проход по жителям. Житель засчитывается каждой фирме,
+     * издержки которой отличаются от минимальных не более чем на {@link #TIE_TOLERANCE}.
+     */
+    public static int[] shares(double[] xy, double[] fx, double[] fy, double[] t,
+                               double[] prices, boolean manhattan) {
+        int n = xy.length / 2;
+        if (n < PARALLEL_THRESHOLD) {
+            int[] out = new int[fx.length];
+            shares(xy, 0, n, fx, fy, t, prices, manhattan, out);
+            return out;
+        }
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    int[] part = new int[fx.length];
+                    shares(xy, c * CHUNK, Math.min(n, (c + 1) * CHUNK), fx, fy, t, prices, manhattan, part);
+                    return part;
+                })
+                .reduce(new int[fx.length], MarketKernel::sum);
+    }
+
+    /**
+     * Добавляет в {@code out} доли рынка, набранные жителями с номерами из [from, to).
+     */
+    public static void shares(double[] xy, int from, int to, double[] fx, double[] fy, double[] t,
+                              double[] prices, boolean manhattan, int[] out) {
+        int f = fx.length;
+        double[] cost = new double[f];
+        for (int r = from; r < to; r++) {
+            double x = xy[2 * r];
+            double y = xy[2 * r + 1];
+            double minCost = Double.MAX_VALUE;
+            for (int j = 0; j < f; j++) {
+                double c = prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan);
+                cost[j] = c;
+                if (c < minCost) minCost = c;
+            }
+            for (int j = 0; j < f; j++) {
+                if (cost[j] - minCost < TIE_TOLERANCE) out[j]++;
+            }
+        }
+    }
+
+    /**
+     * Доля рынка одной фирмы при заданном векторе цен.
+     */
+    public static int share(int firm, double[] xy, double[] fx, double[] fy, double[] t,
+                            double[] prices, boolean manhattan) {
+        int n = xy.length / 2;
+        if (n < PARALLEL_THRESHOLD) {
+            return share(firm, xy, 0, n, fx, fy, t, prices, manhattan);
+        }
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .map(c -> share(firm, xy, c * CHUNK, Math.min(n, (c + 1) * CHUNK), fx, fy, t, prices, manhattan))
+                .sum();
+    }
+
+    private static int share(int firm, double[] xy, int from, int to, double[] fx, double[] fy,
+                             double[] t, double[] prices, boolean manhattan) {
+        int count = 0;
+        for (int r = from; r < to; r++) {
+            double x = xy[2 * r];
+            double y = xy[2 * r + 1];
+            double own = prices[firm] + t[firm] * distance(x, y, fx[firm], fy[firm], manhattan);
+            boolean captured = true;
+            for (int j = 0; j < fx.length && captured; j++) {
+                if (j != firm && own - (prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan)) >= TIE_TOLERANCE) {
+                    captured = false;
+                }
+            }
+            if (captured) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Доли рынка всех фирм по жителям в одинарной точности с допуском {@link #FLOAT_TIE_TOLERANCE}.
+     */
+    public static int[] shares(float[] xy, double[] fx, double[] fy, double[] t,
+                               double[] prices, boolean manhattan) {
+        validateTieTolerance(FLOAT_TIE_TOLERANCE, maxCost(t, prices, manhattan));
+        float[] ffx = narrow(fx), ffy = narrow(fy), ft = narrow(t), fp = narrow(prices);
+        int n = xy.length / 2;
+        if (n < PARALLEL_THRESHOLD) {
+            int[] out = new int[fx.length];
+            shares(xy, 0, n, ffx, ffy, ft, fp, manhattan, out);
+            return out;
+        }
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    int[] part = new int[fx.length];
+                    shares(xy, c * CHUNK, Math.min(n, (c + 1) * CHUNK), ffx, ffy, ft, fp, manhattan, part);
+                    return part;
+                })
+                .reduce(new int[fx.length], MarketKernel::sum);
+    }
+
+    private static void shares(float[] xy, int from, int to, float[] fx, float[] fy, float[] t,
+                               float[] prices, boolean manhattan, int[] out) {
+        int f = fx.length;
+        float[] cost = new float[f];
+        for (int r = from; r < to; r++) {
+            float x = xy[2 * r];
+            float y = xy[2 * r + 1];
+            float minCost = Float.MAX_VALUE;
+            for (int j = 0; j < f; j++) {
+                float c = prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan);
+                cost[j] = c;
+                if (c < minCost) minCost = c;
+            }
+            for (int j = 0; j < f; j++) {
+                if (cost[j] - minCost < FLOAT_TIE_TOLERANCE) out[j]++;
+            }
+        }
+    }
+
+    /**
+     * Доля рынка одной фирмы по жителям в одинарной точности.
+     */
+    public static int share(int firm, float[] xy, double[] fx, double[] fy, double[] t,
+                            double[] prices, boolean manhattan) {
+        validateTieTolerance(FLOAT_TIE_TOLERANCE, maxCost(t, prices, manhattan));
+        float[] ffx = narrow(fx), ffy = narrow(fy), ft = narrow(t), fp = narrow(prices);
+        int n = xy.length / 2;
+        if (n < PARALLEL_THRESHOLD) {
+            return share(firm, xy, 0, n, ffx, ffy, ft, fp, manhattan);
+        }
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .map(c -> share(firm, xy, c * CHUNK, Math.min(n, (c + 1) * CHUNK), ffx, ffy, ft, fp, manhattan))
+                .sum();
+    }
+
+    private static int share(int firm, float[] xy, int from, int to, float[] fx, float[] fy,
+                             float[] t, float[] prices, boolean manhattan) {
+        int count = 0;
+        for (int r = from; r < to; r++) {
+            float x = xy[2 * r];
+            float y = xy[2 * r + 1];
+            float own = prices[firm] + t[firm] * distance(x, y, fx[firm], fy[firm], manhattan);
+            boolean captured = true;
+            for (int j = 0; j < fx.length && captured; j++) {
+                if (j != firm && own - (prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan)) >= FLOAT_TIE_TOLERANCE) {
+                    captured = false;
+                }
+            }
+            if (captured) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Доли рынка всех фирм по жителям, хранящимся вне кучи.
+     */
+    public static int[] shares(OffHeapResidents residents, double[] fx, double[] fy, double[] t,
+                               double[] prices, boolean manhattan) {
+        MemorySegment xy = residents.segment();
+        long n = residents.count();
+        int chunks = (int) ((n + CHUNK - 1) / CHUNK);
+        IntStream range = IntStream.range(0, chunks);
+        if (n >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        return range
+                .mapToObj(c -> {
+                    int[] part = new int[fx.length];
+                    shares(xy, (long) c * CHUNK, Math.min(n, (long) (c + 1) * CHUNK), fx, fy, t, prices, manhattan, part);
+                    return part;
+                })
+                .reduce(new int[fx.length], MarketKernel::sum);
+    }
+
+    private static void shares(MemorySegment xy, long from, long to, double[] fx, double[] fy, double[] t,
+                               double[] prices, boolean manhattan, int[] out) {
+        int f = fx.length;
+        double[] cost = new double[f];
+        for (long r = from; r < to; r++) {
+            double x = xy.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * r);
+            double y = xy.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * r + 1);
+            double minCost = Double.MAX_VALUE;
+            for (int j = 0; j < f; j++) {
+                double c = prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan);
+                cost[j] = c;
+                if (c < minCost) minCost = c;
+            }
+            for (int j = 0; j < f; j++) {
+                if (cost[j] - minCost < TIE_TOLERANCE) out[j]++;
+            }
+        }
+    }
+
+    /**
+     * Доля рынка одной фирмы по жителям, хранящимся вне кучи.
+     */
+    public static int share(int firm, OffHeapResidents residents, double[] fx, double[] fy, double[] t,
+                            double[] prices, boolean manhattan) {
+        MemorySegment xy = residents.segment();
+        long n = residents.count();
+        int chunks = (int) ((n + CHUNK - 1) / CHUNK);
+        IntStream range = IntStream.range(0, chunks);
+        if (n >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        return range
+                .map(c -> share(firm, xy, (long) c * CHUNK, Math.min(n, (long) (c + 1) * CHUNK), fx, fy, t, prices, manhattan))
+                .sum();
+    }
+
+    private static int share(int firm, MemorySegment xy, long from, long to, double[] fx, double[] fy,
+                             double[] t, double[] prices, boolean manhattan) {
+        int count = 0;
+        for (long r = from; r < to; r++) {
+            double x = xy.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * r);
+            double y = xy.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * r + 1);
+            double own = prices[firm] + t[firm] * distance(x, y, fx[firm], fy[firm], manhattan);
+            boolean captured = true;
+            for (int j = 0; j < fx.length && captured; j++) {
+                if (j != firm && own - (prices[j] + t[j] * distance(x, y, fx[j], fy[j], manhattan)) >= TIE_TOLERANCE) {
+                    captured = false;
+                }
+            }
+            if (captured) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Тернарный поиск цены фирмы, максимизирующей прибыль при фиксированных ценах конкурентов.
+     * Поиск останавливается, когда интервал сужается до {@code precision}.
+     * Массив {@code prices} используется как рабочий и по завершении восстанавливается.
+     */
+    public static double ternarySearchPrice(int firm, double[] xy, double[] fx, double[] fy, double[] t,
+                                            double[] prices, boolean manhattan, double precision) {
+        double saved = prices[firm];
+        double best = ternarySearch(HotellingDuopoly.MIN_PRICE, HotellingDuopoly.MAX_PRICE, precision, price -> {
+            prices[firm] = price;
+            return price * share(firm, xy, fx, fy, t, prices, manhattan);
+        });
+        prices[firm] = saved;
+        return best;
+    }
+
+    /**
+     * Тернарный поиск максимума одновершинной функции {@code objective} на [left, right]:
+     * не больше 50 сужений и до ширины интервала {@code precision}. Возвращает середину интервала.
+     */
+    static double ternarySearch(double left, double right, double precision, DoubleUnaryOperator objective) {
+        for (int i = 0; i < 50 && right - left > precision; i++) {
+            double m1 = left + (right - left) / 3;
+            double m2 = right - (right - left) / 3;
+            if (objective.applyAsDouble(m1) < objective.applyAsDouble(m2)) {
+                left = m1;
+            } else {
+                right = m2;
+            }
+        }
+        return (left + right) / 2;
+    }
+
+    /**
+     * Best-response dynamics на копии вектора цен: возвращает цены после сходимости
+     * (или после {@code maxIterations} раундов).
+     */
+    public static double[] bestResponseDynamics(double[] xy, double[] fx, double[] fy, double[] t,
+                                                double[] startPrices, boolean manhattan,
+                                                double tolPrice, int maxIterations) {
+        double[] prices = startPrices.clone();
+        for (int iter = 0; iter < maxIterations; iter++) {
+            boolean anyChange = false;
+            for (int i = 0; i < prices.length; i++) {
+                double bestPrice = ternarySearchPrice(i, xy, fx, fy, t, prices, manhattan, tolPrice / 2);
+                if (Math.abs(bestPrice - prices[i]) > tolPrice) {
+                    prices[i] = bestPrice;
+                    anyChange = true;
+                }
+            }
+            if (!anyChange) break;
+        }
+        return prices;
+    }
+
+    /**
+     * Решение системы A x = b методом Гаусса с выбором главного элемента; {@code a} и {@code b}
+     * не изменяются.
+     *
+     * @throws IllegalStateException если матрица вырождена
+     */
+    static double[] solveLinear(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][];
+        for (int i = 0; i < n; i++) {
+            m[i] = new double[n + 1];
+            System.arraycopy(a[i], 0, m[i], 0, n);
+            m[i][n] = b[i];
+        }
+        for (int c = 0; c < n; c++) {
+            int pivot = c;
+            for (int r = c + 1; r < n; r++) {
+                if (Math.abs(m[r][c]) > Math.abs(m[pivot][c])) pivot = r;
+            }
+            if (Math.abs(m[pivot][c]) < 1e-12) {
+                throw new IllegalStateException("Матрица системы вырождена");
+            }
+            double[] swap = m[c];
+            m[c] = m[pivot];
+            m[pivot] = swap;
+            for (int r = 0; r < n; r++) {
+                if (r == c) continue;
+                double factor = m[r][c] / m[c][c];
+                for (int k = c; k <= n; k++) {
+                    m[r][k] -= factor * m[c][k];
+                }
+            }
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = m[i][n] / m[i][i];
+        }
+        return x;
+    }
+
+    static double distance(double x1, double y1, double x2, double y2, boolean manhattan) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        if (manhattan) {
+            return Math.abs(dx) + Math.abs(dy);
+        }
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    static float distance(float x1, float y1, float x2, float y2, boolean manhattan) {
+        float dx = x1 - x2;
+        float dy = y1 - y2;
+        if (manhattan) {
+            return Math.abs(dx) + Math.abs(dy);
+        }
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float[] narrow(double[] values) {
+        float[] out = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (float) values[i];
+        }
+        return out;
+    }
+
+    static double[] xs(List<Firm> firms) {
+        return firms.stream().mapToDouble(f -> f.x).toArray();
+    }
+
+    static double[] ys(List<Firm> firms) {
+        return firms.stream().mapToDouble(f -> f.y).toArray();
+    }
+
+    static double[] prices(List<Firm> firms) {
+        return firms.stream().mapToDouble(f -> f.price).toArray();
+    }
+
+    static double[] transportCoefs(List<Firm> firms) {
+        return firms.stream().mapToDouble(f -> f.transportCoef).toArray();
+    }
+
+    static double[] capacities(List<Firm> firms) {
+        return firms.stream().mapToDouble(f -> f.capacity).toArray();
+    }
+
+    private static int[] sum(int[] a, int[] b) {
+        int[] s = new int[a.length];
+        for (int i = 0; i < a.length; i++) s[i] = a[i] + b[i];
+        return s;
+    }
+}
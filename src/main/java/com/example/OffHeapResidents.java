@@ -0,0 +1,140 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Хранилище жителей вне кучи Java: координаты лежат в {@link MemorySegment} в том же
+ * плоском формате {x0, y0, x1, y1, ...}, что и массивы {@link MarketKernel}.
+ * Сегмент выделяется в памяти процесса или отображается из файла; сборщик мусора его
+ * не сканирует, а память освобождается детерминированно при {@link #close()} через {@link Arena}.
+ * Арена разделяемая, поэтому ядра могут читать сегмент из нескольких потоков.
+ * Решатели получают доли по таким жителям через {@link MarketEvaluator#offHeap}.
+ */
+public final class OffHeapResidents implements AutoCloseable {
+
+    private static final long POINT_BYTES = 2 * Double.BYTES;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long count;
+
+    private OffHeapResidents(Arena arena, MemorySegment segment, long count) {
+        this.arena = arena;
+        this.segment = segment;
+        this.count = count;
+    }
+
+    /**
+     * Выделяет память под {@code count} жителей (координаты заполнены нулями).
+     */
+    public static OffHeapResidents allocate(long count) {
+        Arena arena = Arena.ofShared();
+        return new OffHeapResidents(arena, arena.allocate(count * POINT_BYTES, Double.BYTES), count);
+    }
+
+    /**
+     * Копирует жителей из плоского массива.
+     */
+    public static OffHeapResidents copyOf(double[] xy) {
+        OffHeapResidents residents = allocate(xy.length / 2);
+        MemorySegment.copy(xy, 0, residents.segment, ValueLayout.JAVA_DOUBLE, 0, xy.length);
+        return residents;
+    }
+
+    /**
+     * Генерирует жителей той же последовательности, что и {@link ResidentGenerator#uniform},
+     * блоками прямо в память вне кучи: в куче одновременно живёт не больше одного блока на поток.
+     */
+    public static OffHeapResidents generate(long seed, int count, String shape, String metric) {
+        OffHeapResidents residents = allocate(count);
+        residents.fillFrom(seed, shape, metric);
+        return residents;
+    }
+
+    /**
+     * Создаёт (или перезаписывает) файл с жителями по зерну и отображает его в память.
+     * Файл затем можно открыть повторно через {@link #open(Path)} без повторной генерации.
+     */
+    public static OffHeapResidents create(Path file, long seed, int count, String shape, String metric)
+            throws IOException {
+        OffHeapResidents residents = map(file, count * POINT_BYTES, true);
+        residents.fillFrom(seed, shape, metric);
+        return residents;
+    }
+
+    /**
+     * Отображает в память существующий файл с жителями только для чтения.
+     *
+     * @throws IOException если размер файла не кратен размеру записи жителя
+     */
+    public static OffHeapResidents open(Path file) throws IOException {
+        return map(file, -1, false);
+    }
+
+    private static OffHeapResidents map(Path file, long bytes, boolean create) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = create ? bytes : channel.size();
+            if (size % POINT_BYTES != 0) {
+                throw new IOException("Размер файла " + file + " (" + size + " байт) не кратен " + POINT_BYTES
+                        + " байтам на жителя");
+            }
+            MemorySegment segment = channel.map(create ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, size, arena);
+            return new OffHeapResidents(arena, segment, size / POINT_BYTES);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double x(long i) {
+        return segment.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * i);
+    }
+
+    public double y(long i) {
+        return segment.getAtIndex(ValueLayout.JAVA_DOUBLE, 2 * i + 1);
+    }
+
+    /**
+     * Сегмент с координатами; действителен до вызова {@link #close()}.
+     */
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    /**
+     * Освобождает память (или отображение файла). После закрытия обращения к сегменту
+     * завершаются {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private void fillFrom(long seed, String shape, String metric) {
+        int total = Math.toIntExact(count);
+        int chunks = (total + ResidentGenerator.CHUNK - 1) / ResidentGenerator.CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * ResidentGenerator.CHUNK;
+            int to = Math.min(total, from + ResidentGenerator.CHUNK);
+            double[] block = new double[(to - from) * 2];
+            ResidentGenerator.fill(seed, from, to, shape, metric, block, 0);
+            MemorySegment.copy(block, 0, segment, ValueLayout.JAVA_DOUBLE, from * POINT_BYTES, block.length);
+        });
+    }
+}
@@ -0,0 +1,223 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Рынок с приходящими и уходящими жителями. Жители добавляются и удаляются пачками,
+ * добавление возвращает дескрипторы для последующего удаления. Для каждого жителя хранится
+ * маска фирм с наименьшими издержками (как в {@link IncrementalMarket}), поэтому доли
+ * обновляются за O(размер пачки * число фирм) без прохода по всем жителям; удалённого жителя
+ * замещает последний.
+ * <p>
+ * Дескриптор - номер ячейки в младших {@value #INDEX_BITS} битах и поколение ячейки в старших.
+ * Ячейки удалённых жителей переиспользуются, поэтому таблица дескрипторов растёт с числом
+ * одновременно живущих жителей, а не с числом добавлений; поколение отличает устаревший
+ * дескриптор от нового владельца той же ячейки (с точностью до переполнения счётчика поколений).
+ * <p>
+ * Цены пересчитываются лениво: {@link #prices()} решает равновесие заново (best-response
+ * dynamics со старта из текущих цен), только если доли рынка с последнего решения сместились
+ * больше чем на {@link #setDriftThreshold порог}. Методы синхронизированы.
+ */
+public class OnlineMarket {
+
+    /** Бит под номер ячейки в дескрипторе: не больше 2^24 одновременно живущих жителей. */
+    static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (Integer.SIZE - 1 - INDEX_BITS)) - 1;
+
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final boolean manhattan;
+    private double[] prices;
+    private double[] xy = new double[64];
+    private long[] mask = new long[32];
+    private int[] handleOf = new int[32];
+    /** Позиция жителя по номеру ячейки дескриптора; -1 - ячейка свободна. */
+    private int[] slotOf = new int[32];
+    private int[] generation = new int[32];
+    /** Стек свободных ячеек дескрипторов. */
+    private int[] freeIndices = new int[32];
+    private int freeCount;
+    private int count;
+    /** Число когда-либо выданных ячеек дескрипторов. */
+    private int indices;
+    private final int[] shares;
+    /** Издержки жителя у фирм при пересчёте; общий буфер под блокировкой рынка. */
+    private final double[] cost;
+    private double[] solvedFractions;
+    private double driftThreshold = 0.02;
+    private double tolPrice = 1e-3;
+    private int maxIterations = 100;
+    private int solves;
+
+    public OnlineMarket(double[] fx, double[] fy, double[] t, double[] prices, boolean manhattan) {
+        if (fx.length > IncrementalMarket.MAX_FIRMS) {
+            throw new IllegalArgumentException("Не более " + IncrementalMarket.MAX_FIRMS + " фирм, получено " + fx.length);
+        }
+        this.fx = fx.clone();
+        this.fy = fy.clone();
+        this.t = t.clone();
+        this.prices = prices.clone();
+        this.manhattan = manhattan;
+        this.shares = new int[fx.length];
+        this.cost = new double[fx.length];
+        this.solvedFractions = new double[fx.length];
+    }
+
+    /**
+     * Порог смещения долей: наибольшее по фирмам изменение доли (в долях от числа жителей)
+     * с момента последнего решения, после которого цены решаются заново.
+     */
+    public synchronized void setDriftThreshold(double driftThreshold) {
+        this.driftThreshold = driftThreshold;
+    }
+
+    public synchronized void setTolPrice(double tolPrice) {
+        this.tolPrice = tolPrice;
+    }
+
+    public synchronized void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Добавляет жителей {x0, y0, x1, y1, ...}; возвращает их дескрипторы.
+     */
+    public synchronized int[] add(double[] batch) {
+        int n = batch.length / 2;
+        if (n > INDEX_MASK + 1 - count) {
+            throw new IllegalArgumentException("Не более " + (INDEX_MASK + 1) + " жителей одновременно");
+        }
+        ensureCapacity(count + n);
+        int[] handles = new int[n];
+        for (int k = 0; k < n; k++) {
+            int index = freeCount > 0 ? freeIndices[--freeCount] : indices++;
+            if (index >= slotOf.length) {
+                int capacity = Math.max(2 * slotOf.length, index + 1);
+                slotOf = Arrays.copyOf(slotOf, capacity);
+                generation = Arrays.copyOf(generation, capacity);
+                freeIndices = Arrays.copyOf(freeIndices, capacity);
+            }
+            int handle = generation[index] << INDEX_BITS | index;
+            int slot = count++;
+            xy[2 * slot] = batch[2 * k];
+            xy[2 * slot + 1] = batch[2 * k + 1];
+            mask[slot] = assign(slot);
+            IncrementalMarket.addShares(shares, mask[slot], 1);
+            handleOf[slot] = handle;
+            slotOf[index] = slot;
+            handles[k] = handle;
+        }
+        return handles;
+    }
+
+    /**
+     * Удаляет жителей по дескрипторам. Пачка проверяется целиком до изменений: неизвестный,
+     * уже удалённый или повторённый в пачке дескриптор - ошибка, и рынок остаётся прежним.
+     */
+    public synchronized void remove(int[] handles) {
+        int[] sorted = handles.clone();
+        Arrays.sort(sorted);
+        for (int k = 0; k < sorted.length; k++) {
+            if (!live(sorted[k]) || k > 0 && sorted[k] == sorted[k - 1]) {
+                throw new IllegalArgumentException("Неизвестный или уже удалённый житель: " + sorted[k]);
+            }
+        }
+        for (int handle : handles) {
+            int index = handle & INDEX_MASK;
+            int slot = slotOf[index];
+            IncrementalMarket.addShares(shares, mask[slot], -1);
+            int last = --count;
+            if (slot != last) {
+                xy[2 * slot] = xy[2 * last];
+                xy[2 * slot + 1] = xy[2 * last + 1];
+                mask[slot] = mask[last];
+                handleOf[slot] = handleOf[last];
+                slotOf[handleOf[slot] & INDEX_MASK] = slot;
+            }
+            slotOf[index] = -1;
+            generation[index] = (generation[index] + 1) & GENERATION_MASK;
+            freeIndices[freeCount++] = index;
+        }
+    }
+
+    private boolean live(int handle) {
+        int index = handle & INDEX_MASK;
+        return handle >= 0 && index < indices && slotOf[index] >= 0 && generation[index] == handle >>> INDEX_BITS;
+    }
+
+    public synchronized int residentCount() {
+        return count;
+    }
+
+    /** Доли рынка при текущих ценах (без пересчёта цен). */
+    public synchronized int[] shares() {
+        return shares.clone();
+    }
+
+    /** Копия текущих жителей {x0, y0, ...}. */
+    public synchronized double[] residents() {
+        return Arrays.copyOf(xy, 2 * count);
+    }
+
+    /**
+     * Наибольшее по фирмам изменение доли рынка с момента последнего решения.
+     */
+    public synchronized double drift() {
+        double drift = 0;
+        for (int i = 0; i < shares.length; i++) {
+            drift = Math.max(drift, Math.abs(fraction(i) - solvedFractions[i]));
+        }
+        return drift;
+    }
+
+    /**
+     * Текущие цены; если смещение долей превысило порог, цены сначала решаются заново.
+     */
+    public synchronized double[] prices() {
+        if (count > 0 && drift() > driftThreshold) {
+            resolve();
+        }
+        return prices.clone();
+    }
+
+    /** Число решений цен. */
+    public synchronized int solves() {
+        return solves;
+    }
+
+    /**
+     * Решает равновесие на текущих жителях и пересчитывает маски всех жителей.
+     */
+    public synchronized void resolve() {
+        prices = MarketKernel.bestResponseDynamics(Arrays.copyOf(xy, 2 * count), fx, fy, t, prices, manhattan,
+                tolPrice, maxIterations);
+        Arrays.fill(shares, 0);
+        for (int slot = 0; slot < count; slot++) {
+            mask[slot] = assign(slot);
+            IncrementalMarket.addShares(shares, mask[slot], 1);
+        }
+        for (int i = 0; i < shares.length; i++) {
+            solvedFractions[i] = fraction(i);
+        }
+        solves++;
+    }
+
+    private double fraction(int firm) {
+        return count == 0 ? 0 : (double) shares[firm] / count;
+    }
+
+    private long assign(int slot) {
+        return IncrementalMarket.tieMask(xy[2 * slot], xy[2 * slot + 1], fx, fy, t, prices, manhattan, cost);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > mask.length) {
+            int capacity = Math.max(needed, 2 * mask.length);
+            xy = Arrays.copyOf(xy, 2 * capacity);
+            mask = Arrays.copyOf(mask, capacity);
+            handleOf = Arrays.copyOf(handleOf, capacity);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Решатель "от грубого к точному": равновесие сначала ищется на малой стратифицированной
+ * подвыборке жителей, затем выборка растёт (по умолчанию 1% - 10% - 100%), и каждый этап
+ * стартует с цен предыдущего. После каждого этапа публикуется промежуточный ответ
+ * с оценкой погрешности, так что пригодный результат доступен почти сразу и уточняется со временем.
+ * <p>
+ * Страты - ячейки сетки {@link #STRATA}x{@link #STRATA}; внутри ячейки жители перемешаны
+ * один раз, а выборка этапа - пропорциональный префикс каждой ячейки, поэтому выборки
+ * соседних этапов вложены друг в друга с точностью до округления.
+ */
+public class ProgressiveSolver {
+
+    /** Число страт по каждой оси. */
+    static final int STRATA = 16;
+
+    /** Минимальный размер выборки этапа. */
+    static final int MIN_SAMPLE = 200;
+
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final boolean manhattan;
+    private final double[] stratified;
+    private final int[] cellStart;
+    private double[] fractions = {0.01, 0.1, 1.0};
+    private double tolPrice = 1e-3;
+    private int maxIterations = 100;
+
+    public ProgressiveSolver(List<Firm> firms, double[] xy, String metric, long seed) {
+        this.fx = MarketKernel.xs(firms);
+        this.fy = MarketKernel.ys(firms);
+        this.t = MarketKernel.transportCoefs(firms);
+        this.manhattan = metric.equals("Manhattan");
+        int n = xy.length / 2;
+        int cells = STRATA * STRATA;
+        int[] cellOf = new int[n];
+        this.cellStart = new int[cells + 1];
+        for (int r = 0; r < n; r++) {
+            cellOf[r] = cell(xy[2 * r], xy[2 * r + 1]);
+            cellStart[cellOf[r] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = cellStart.clone();
+        this.stratified = new double[xy.length];
+        for (int r = 0; r < n; r++) {
+            int pos = next[cellOf[r]]++;
+            stratified[2 * pos] = xy[2 * r];
+            stratified[2 * pos + 1] = xy[2 * r + 1];
+        }
+        SplittableRandom rand = new SplittableRandom(seed);
+        for (int c = 0; c < cells; c++) {
+            for (int i = cellStart[c + 1] - 1; i > cellStart[c]; i--) {
+                swap(i, cellStart[c] + rand.nextInt(i - cellStart[c] + 1));
+            }
+        }
+    }
+
+    public void setFractions(double... fractions) {
+        this.fractions = fractions.clone();
+    }
+
+    public void setTolPrice(double tolPrice) {
+        this.tolPrice = tolPrice;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Решает все этапы по очереди, передавая каждый промежуточный ответ в {@code listener}.
+     * Возвращает ответ последнего этапа.
+     */
+    public Estimate solve(double[] startPrices, Consumer<Estimate> listener) {
+        int population = stratified.length / 2;
+        double[] prices = startPrices.clone();
+        Estimate estimate = null;
+        for (int stage = 0; stage < fractions.length; stage++) {
+            double[] sample = sample(fractions[stage]);
+            int n = sample.length / 2;
+            double[] previous = prices;
+            prices = MarketKernel.bestResponseDynamics(sample, fx, fy, t, previous, manhattan, tolPrice, maxIterations);
+            int[] shares = MarketKernel.shares(sample, fx, fy, t, prices, manhattan);
+            estimate = new Estimate(stage, n, population, prices, shares, previous);
+            listener.accept(estimate);
+            if (n == population) break;
+        }
+        return estimate;
+    }
+
+    /**
+     * Стратифицированная выборка доли {@code fraction} жителей (не меньше {@link #MIN_SAMPLE}).
+     */
+    double[] sample(double fraction) {
+        int population = stratified.length / 2;
+        int target = Math.min(population, Math.max(MIN_SAMPLE, (int) Math.ceil(fraction * population)));
+        if (target == population) {
+            return stratified;
+        }
+        double share = (double) target / population;
+        double[] sample = new double[2 * target];
+        int k = 0;
+        double carry = 0;
+        for (int c = 0; c + 1 < cellStart.length && k < target; c++) {
+            double exact = (cellStart[c + 1] - cellStart[c]) * share + carry;
+            int take = Math.min((int) Math.floor(exact), target - k);
+            carry = exact - take;
+            System.arraycopy(stratified, 2 * cellStart[c], sample, 2 * k, 2 * take);
+            k += take;
+        }
+        return k == target ? sample : Arrays.copyOf(sample, 2 * k);
+    }
+
+    private static int cell(double x, double y) {
+        int cx = Math.min(STRATA - 1, Math.max(0, (int) (x * STRATA)));
+        int cy = Math.min(STRATA - 1, Math.max(0, (int) (y * STRATA)));
+        return cy * STRATA + cx;
+    }
+
+    private void swap(int i, int j) {
+        double x = stratified[2 * i], y = stratified[2 * i + 1];
+        stratified[2 * i] = stratified[2 * j];
+        stratified[2 * i + 1] = stratified[2 * j + 1];
+        stratified[2 * j] = x;
+        stratified[2 * j + 1] = y;
+    }
+
+    /**
+     * Промежуточный ответ этапа. Доли и прибыли пересчитаны на всё население; погрешность
+     * прибыли - стандартная ошибка выборочной доли с поправкой на конечную совокупность,
+     * погрешность цен - их изменение относительно предыдущего этапа.
+     */
+    public static class Estimate {
+        public final int stage;
+        public final int sampleSize;
+        public final int population;
+        public final double[] prices;
+        public final double[] shares;
+        public final double[] profits;
+        public final double[] profitStdErrors;
+        public final double maxPriceChange;
+
+        Estimate(int stage, int sampleSize, int population, double[] prices, int[] sampleShares, double[] previous) {
+            this.stage = stage;
+            this.sampleSize = sampleSize;
+            this.population = population;
+            this.prices = prices;
+            this.shares = new double[prices.length];
+            this.profits = new double[prices.length];
+            this.profitStdErrors = new double[prices.length];
+            double correction = population > 1 ? (double) (population - sampleSize) / (population - 1) : 0;
+            double change = 0;
+            for (int i = 0; i < prices.length; i++) {
+                double p = (double) sampleShares[i] / sampleSize;
+                shares[i] = p * population;
+                profits[i] = prices[i] * shares[i];
+                profitStdErrors[i] = prices[i] * population * Math.sqrt(p * (1 - p) / sampleSize * correction);
+                change = Math.max(change, Math.abs(prices[i] - previous[i]));
+            }
+            this.maxPriceChange = change;
+        }
+
+        public boolean isFinal() {
+            return sampleSize == population;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Монте-Карло репликации равновесия: каждая репликация решает Best Response на независимой
+ * выборке жителей со своим зерном. Репликации идут параллельными пачками, результаты
+ * сворачиваются в онлайн-оценки среднего и дисперсии (алгоритм Уэлфорда) без хранения
+ * отдельных прогонов. Счёт останавливается, как только полуширина доверительного
+ * интервала всех равновесных цен не превышает заданной. Интервал строится по квантилю
+ * распределения Стьюдента с n - 1 степенями свободы: при минимальных 8 репликациях
+ * нормальный квантиль занизил бы полуширину примерно на 17%.
+ */
+public class ReplicationRunner {
+
+    /** Квантиль нормального распределения для 95% доверительного интервала. */
+    static final double Z_95 = 1.959964;
+
+    /** Квантили Стьюдента t(0.975) для 1..30 степеней свободы. */
+    private static final double[] T_95 = {
+            12.706205, 4.302653, 3.182446, 2.776445, 2.570582, 2.446912, 2.364624, 2.306004, 2.262157, 2.228139,
+            2.200985, 2.178813, 2.160369, 2.144787, 2.131450, 2.119905, 2.109816, 2.100922, 2.093024, 2.085963,
+            2.079614, 2.073873, 2.068658, 2.063899, 2.059539, 2.055529, 2.051831, 2.048407, 2.045230, 2.042272};
+
+    /** Число репликаций в пачке; фиксировано, чтобы момент остановки не зависел от числа потоков. */
+    static final int BATCH = 16;
+
+    private final double[] fx;
+    private final double[] fy;
+    private final double[] t;
+    private final double[] startPrices;
+    private final String shape;
+    private final String metric;
+    private final int residentsPerDraw;
+    private final long seed;
+    private int minReplications = 8;
+    private int maxIterations = 100;
+    private double tolPrice = 1e-3;
+
+    /**
+     * @param firms            фирмы: расположение, транспортные коэффициенты и начальные цены
+     * @param residentsPerDraw число жителей в одной выборке
+     * @param seed             зерно, из которого выводятся зёрна всех репликаций
+     */
+    public ReplicationRunner(List<Firm> firms, String shape, String metric, int residentsPerDraw, long seed) {
+        this.fx = MarketKernel.xs(firms);
+        this.fy = MarketKernel.ys(firms);
+        this.t = MarketKernel.transportCoefs(firms);
+        this.startPrices = MarketKernel.prices(firms);
+        this.shape = shape;
+        this.metric = metric;
+        this.residentsPerDraw = residentsPerDraw;
+        this.seed = seed;
+    }
+
+    public void setMinReplications(int minReplications) {
+        this.minReplications = minReplications;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public void setTolPrice(double tolPrice) {
+        this.tolPrice = tolPrice;
+    }
+
+    /**
+     * Выполняет репликации, пока полуширина 95% интервала каждой цены не станет не больше
+     * {@code targetHalfWidth} (но не меньше минимального числа репликаций) или пока
+     * не будет выполнено {@code maxReplications}. Результат не зависит от числа потоков.
+     */
+    public Result run(int maxReplications, double targetHalfWidth) {
+        int f = fx.length;
+        OnlineStats[] prices = new OnlineStats[f];
+        OnlineStats[] profits = new OnlineStats[f];
+        for (int i = 0; i < f; i++) {
+            prices[i] = new OnlineStats();
+            profits[i] = new OnlineStats();
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+        int done = 0;
+        boolean converged = false;
+        while (done < maxReplications && !converged) {
+            int batch = Math.min(BATCH, maxReplications - done);
+            long[] batchSeeds = new long[batch];
+            for (int k = 0; k < batch; k++) {
+                batchSeeds[k] = seeds.nextLong();
+            }
+            double[][] outcomes = IntStream.range(0, batch).parallel()
+                    .mapToObj(k -> replicate(batchSeeds[k]))
+                    .toArray(double[][]::new);
+            for (double[] outcome : outcomes) {
+                for (int i = 0; i < f; i++) {
+                    prices[i].add(outcome[i]);
+                    profits[i].add(outcome[f + i]);
+                }
+            }
+            done += batch;
+            if (done >= minReplications) {
+                converged = true;
+                for (OnlineStats s : prices) {
+                    if (s.halfWidth95() > targetHalfWidth) {
+                        converged = false;
+                        break;
+                    }
+                }
+            }
+        }
+        return new Result(done, converged, prices, profits);
+    }
+
+    /**
+     * Квантиль t(0.975) распределения Стьюдента с {@code degreesOfFreedom} степенями свободы:
+     * табличный до 30, дальше - разложение Корниша-Фишера по нормальному квантилю
+     * (погрешность меньше 1e-6).
+     */
+    static double t95(long degreesOfFreedom) {
+        if (degreesOfFreedom < 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (degreesOfFreedom <= T_95.length) {
+            return T_95[(int) degreesOfFreedom - 1];
+        }
+        double z = Z_95, v = degreesOfFreedom;
+        double z2 = z * z, z3 = z2 * z, z5 = z3 * z2, z7 = z5 * z2, z9 = z7 * z2;
+        return z + (z3 + z) / (4 * v)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v)
+                + (79 * z9 + 776 * z7 + 1482 * z5 - 1920 * z3 - 945 * z) / (92160 * v * v * v * v);
+    }
+
+    /**
+     * Одна репликация: {цены фирм..., прибыли фирм...}.
+     */
+    private double[] replicate(long replicationSeed) {
+        double[] xy = ResidentGenerator.uniform(replicationSeed, residentsPerDraw, shape, metric);
+        boolean manhattan = metric.equals("Manhattan");
+        double[] prices = MarketKernel.bestResponseDynamics(xy, fx, fy, t, startPrices, manhattan,
+                tolPrice, maxIterations);
+        int[] shares = MarketKernel.shares(xy, fx, fy, t, prices, manhattan);
+        double[] outcome = new double[2 * prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            outcome[i] = prices[i];
+            outcome[prices.length + i] = prices[i] * shares[i];
+        }
+        return outcome;
+    }
+
+    /**
+     * Онлайн-оценка среднего и дисперсии по Уэлфорду.
+     */
+    public static class OnlineStats {
+        private long count;
+        private double mean;
+        private double m2;
+
+        public void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double mean() {
+            return mean;
+        }
+
+        /** Несмещённая выборочная дисперсия. */
+        public double variance() {
+            return count > 1 ? m2 / (count - 1) : Double.POSITIVE_INFINITY;
+        }
+
+        /** Полуширина доверительного интервала для среднего. */
+        public double halfWidth(double z) {
+            return z * Math.sqrt(variance() / count);
+        }
+
+        /** Полуширина 95% интервала для среднего по квантилю Стьюдента с count - 1 степенями свободы. */
+        public double halfWidth95() {
+            return halfWidth(t95(count - 1));
+        }
+    }
+
+    /**
+     * Итог репликаций: средние и полуширины 95% интервалов Стьюдента цен и прибылей.
+     */
+    public static class Result {
+        public final int replications;
+        public final boolean converged;
+        public final double[] meanPrices;
+        public final double[] priceHalfWidths;
+        public final double[] meanProfits;
+        public final double[] profitHalfWidths;
+
+        Result(int replications, boolean converged, OnlineStats[] prices, OnlineStats[] profits) {
+            this.replications = replications;
+            this.converged = converged;
+            this.meanPrices = new double[prices.length];
+            this.priceHalfWidths = new double[prices.length];
+            this.meanProfits = new double[profits.length];
+            this.profitHalfWidths = new double[profits.length];
+            for (int i = 0; i < prices.length; i++) {
+                meanPrices[i] = prices[i].mean();
+                priceHalfWidths[i] = prices[i].halfWidth95();
+                meanProfits[i] = profits[i].mean();
+                profitHalfWidths[i] = profits[i].halfWidth95();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+
+/**
+ * Воспроизводимая генерация жителей, фирм и цен по зерну.
+ * Жители разбиваются на блоки фиксированного размера; каждый блок получает собственный
+ * поток {@link SplittableRandom}, полученный последовательным {@code split()} от корневого зерна.
+ * Поэтому результат зависит только от зерна и числа жителей, но не от числа потоков,
+ * и любой диапазон жителей можно сгенерировать отдельно, не генерируя остальных.
+ */
+public final class ResidentGenerator {
+
+    /** Число жителей в одном блоке со своим потоком случайных чисел. */
+    static final int CHUNK = 1 << 16;
+
+    /** Число шагов уличной сетки для метрики Manhattan. */
+    static final int GRID_SIZE = 20;
+
+    private ResidentGenerator() {
+    }
+
+    /**
+     * Равномерно распределённые жители в виде плоского массива {x0, y0, x1, y1, ...}.
+     * Блоки заполняются параллельно.
+     */
+    public static double[] uniform(long seed, int count, String shape, String metric) {
+        double[] xy = new double[count * 2];
+        SplittableRandom[] streams = chunkStreams(seed, (count + CHUNK - 1) / CHUNK);
+        boolean circle = shape.equals("Circle");
+        boolean manhattan = metric.equals("Manhattan");
+        IntStream.range(0, streams.length).parallel().forEach(c -> {
+            int from = c * CHUNK;
+            int to = Math.min(count, from + CHUNK);
+            fillChunk(streams[c], from, to, circle, manhattan, xy, 0);
+        });
+        return xy;
+    }
+
+    /**
+     * Генерирует жителей с номерами из [from, to) той же последовательности, что и
+     * {@link #uniform}, и записывает их в {@code out}, начиная с позиции {@code offset}
+     * (в точках, а не в координатах).
+     */
+    public static void fill(long seed, int from, int to, String shape, String metric, double[] out, int offset) {
+        boolean circle = shape.equals("Circle");
+        boolean manhattan = metric.equals("Manhattan");
+        SplittableRandom[] streams = chunkStreams(seed, (to + CHUNK - 1) / CHUNK);
+        double[] skipped = new double[2];
+        for (int c = from / CHUNK; c < streams.length; c++) {
+            int chunkFrom = c * CHUNK;
+            SplittableRandom rand = streams[c];
+            for (int k = chunkFrom; k < from; k++) {
+                sample(rand, circle, manhattan, skipped, 0);
+            }
+            int start = Math.max(from, chunkFrom);
+            int end = Math.min(to, chunkFrom + CHUNK);
+            fillChunk(rand, start, end, circle, manhattan, out, offset - from);
+        }
+    }
+
+    /**
+     * Случайные фирмы (от 2 до 6) внутри фигуры.
+     */
+    public static List<Firm> randomFirms(long seed, String shape) {
+        RandomGenerator rand = new SplittableRandom(seed);
+        List<Firm> firms = new ArrayList<>();
+        int numFirms = rand.nextInt(5) + 2;
+        double[] point = new double[2];
+        for (int i = 0; i < numFirms; i++) {
+            samplePlain(rand, shape.equals("Circle"), point, 0);
+            firms.add(new Firm(point[0], point[1], i));
+        }
+        return firms;
+    }
+
+    /**
+     * Случайные начальные цены из [1, 10).
+     */
+    public static double[] randomPrices(long seed, int numFirms) {
+        RandomGenerator rand = new SplittableRandom(seed);
+        double[] prices = new double[numFirms];
+        for (int i = 0; i < numFirms; i++) {
+            prices[i] = 1 + rand.nextDouble() * 9;
+        }
+        return prices;
+    }
+
+    /**
+     * Представление плоского массива жителей в виде списка точек, как их хранит интерфейс.
+     */
+    public static List<double[]> toList(double[] xy) {
+        List<double[]> residents = new ArrayList<>(xy.length / 2);
+        for (int i = 0; i < xy.length; i += 2) {
+            residents.add(new double[]{xy[i], xy[i + 1]});
+        }
+        return residents;
+    }
+
+    private static SplittableRandom[] chunkStreams(long seed, int chunks) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            streams[c] = root.split();
+        }
+        return streams;
+    }
+
+    private static void fillChunk(RandomGenerator rand, int from, int to, boolean circle, boolean manhattan,
+                                  double[] out, int shift) {
+        for (int k = from; k < to; k++) {
+            sample(rand, circle, manhattan, out, 2 * (k + shift));
+        }
+    }
+
+    /**
+     * Один житель: для Manhattan - точка на линии уличной сетки, иначе - равномерно по фигуре.
+     */
+    private static void sample(RandomGenerator rand, boolean circle, boolean manhattan, double[] out, int pos) {
+        if (!manhattan) {
+            samplePlain(rand, circle, out, pos);
+            return;
+        }
+        boolean vertical = rand.nextBoolean();
+        double line = (double) rand.nextInt(GRID_SIZE + 1) / GRID_SIZE;
+        double along;
+        if (circle) {
+            double d = Math.abs(line - 0.5);
+            double maxDelta = Math.sqrt(0.25 - d * d);
+            along = 0.5 - maxDelta + rand.nextDouble() * (2 * maxDelta);
+        } else {
+            along = rand.nextDouble();
+        }
+        out[pos] = vertical ? line : along;
+        out[pos + 1] = vertical ? along : line;
+    }
+
+    private static void samplePlain(RandomGenerator rand, boolean circle, double[] out, int pos) {
+        if (circle) {
+            double r = Math.sqrt(rand.nextDouble()) * 0.5;
+            double theta = rand.nextDouble() * 2 * Math.PI;
+            out[pos] = 0.5 + r * Math.cos(theta);
+            out[pos + 1] = 0.5 + r * Math.sin(theta);
+        } else {
+            out[pos] = rand.nextDouble();
+            out[pos + 1] = rand.nextDouble();
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Дорожная сеть: неориентированный граф с узлами на плоскости и рёбрами, длина которых -
+ * евклидово расстояние между концами (или заданная явно). Смежность хранится в CSR-массивах.
+ * Жители и фирмы привязываются к ближайшему узлу, расстояние между ними - длина кратчайшего
+ * пути по сети.
+ * <p>
+ * Поле расстояний фирмы считается один раз алгоритмом Дейкстры, поля разных фирм - параллельно;
+ * {@link Market} хранит их во {@code float} только для узлов, где есть жители, и считает доли
+ * по узлам с весами (числом жителей узла), поэтому итерации по ценам - это просмотр таблицы.
+ */
+public final class RoadNetwork {
+
+    private final double[] nodeXy;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] lengths;
+    private final int cells;
+    private final double minX, minY, cellSize;
+    private final int[] cellStart;
+    private final int[] cellNodes;
+
+    /**
+     * Сеть по координатам узлов {x0, y0, x1, y1, ...} и рёбрам {@code from[k] - to[k]};
+     * длины рёбер - евклидовы.
+     */
+    public RoadNetwork(double[] nodeXy, int[] from, int[] to) {
+        this(nodeXy, from, to, null);
+    }
+
+    /**
+     * Сеть с явными длинами рёбер ({@code null} - евклидовы длины).
+     *
+     * @throws IllegalArgumentException если узел ребра не существует или длина отрицательна
+     */
+    public RoadNetwork(double[] nodeXy, int[] from, int[] to, double[] edgeLengths) {
+        int n = nodeXy.length / 2;
+        if (n == 0) {
+            throw new IllegalArgumentException("Сеть должна содержать хотя бы один узел");
+        }
+        if (from.length != to.length || (edgeLengths != null && edgeLengths.length != from.length)) {
+            throw new IllegalArgumentException("Массивы рёбер разной длины");
+        }
+        this.nodeXy = nodeXy.clone();
+        int[] degree = new int[n + 1];
+        for (int k = 0; k < from.length; k++) {
+            if (from[k] < 0 || from[k] >= n || to[k] < 0 || to[k] >= n) {
+                throw new IllegalArgumentException("Ребро " + k + " ссылается на несуществующий узел");
+            }
+            if (edgeLengths != null && !(edgeLengths[k] >= 0)) {
+                throw new IllegalArgumentException("Длина ребра " + k + " должна быть неотрицательной: " + edgeLengths[k]);
+            }
+            degree[from[k] + 1]++;
+            degree[to[k] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            degree[v + 1] += degree[v];
+        }
+        offsets = degree;
+        targets = new int[2 * from.length];
+        lengths = new double[2 * from.length];
+        int[] fill = Arrays.copyOf(offsets, n);
+        for (int k = 0; k < from.length; k++) {
+            double length = edgeLengths != null ? edgeLengths[k]
+                    : Math.hypot(x(from[k]) - x(to[k]), y(from[k]) - y(to[k]));
+            targets[fill[from[k]]] = to[k];
+            lengths[fill[from[k]]++] = length;
+            targets[fill[to[k]]] = from[k];
+            lengths[fill[to[k]]++] = length;
+        }
+
+        // корзины узлов для поиска ближайшего узла
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            lowX = Math.min(lowX, x(v));
+            lowY = Math.min(lowY, y(v));
+            maxX = Math.max(maxX, x(v));
+            maxY = Math.max(maxY, y(v));
+        }
+        minX = lowX;
+        minY = lowY;
+        cells = Math.max(1, (int) Math.sqrt(n));
+        cellSize = Math.max(Math.max(maxX - lowX, maxY - lowY) / cells, 1e-12);
+        cellStart = new int[cells * cells + 1];
+        cellNodes = new int[n];
+        for (int v = 0; v < n; v++) {
+            cellStart[cellOf(x(v), y(v)) + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, cells * cells);
+        for (int v = 0; v < n; v++) {
+            cellNodes[next[cellOf(x(v), y(v))]++] = v;
+        }
+    }
+
+    /**
+     * Уличная сетка: узлы в точках (i/size, j/size) внутри фигуры, рёбра между соседними узлами
+     * по горизонтали и вертикали. Кратчайший путь между узлами квадратной сетки равен
+     * манхэттенскому расстоянию.
+     */
+    public static RoadNetwork streetGrid(int size, String shape) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Число шагов сетки должно быть положительным: " + size);
+        }
+        int[] id = new int[(size + 1) * (size + 1)];
+        List<double[]> nodes = new ArrayList<>();
+        for (int j = 0; j <= size; j++) {
+            for (int i = 0; i <= size; i++) {
+                double x = (double) i / size, y = (double) j / size;
+                id[j * (size + 1) + i] = HotellingDuopoly.isInsideShape(x, y, shape) ? nodes.size() : -1;
+                if (id[j * (size + 1) + i] >= 0) {
+                    nodes.add(new double[]{x, y});
+                }
+            }
+        }
+        List<int[]> edges = new ArrayList<>();
+        for (int j = 0; j <= size; j++) {
+            for (int i = 0; i <= size; i++) {
+                int v = id[j * (size + 1) + i];
+                if (v < 0) continue;
+                if (i < size && id[j * (size + 1) + i + 1] >= 0) edges.add(new int[]{v, id[j * (size + 1) + i + 1]});
+                if (j < size && id[(j + 1) * (size + 1) + i] >= 0) edges.add(new int[]{v, id[(j + 1) * (size + 1) + i]});
+            }
+        }
+        return new RoadNetwork(MarketKernel.pack(nodes),
+                edges.stream().mapToInt(e -> e[0]).toArray(), edges.stream().mapToInt(e -> e[1]).toArray());
+    }
+
+    public int nodeCount() {
+        return nodeXy.length / 2;
+    }
+
+    public int edgeCount() {
+        return targets.length / 2;
+    }
+
+    public double x(int node) {
+        return nodeXy[2 * node];
+    }
+
+    public double y(int node) {
+        return nodeXy[2 * node + 1];
+    }
+
+    /**
+     * Отрезки рёбер {x0, y0, x1, y1, ...}, каждое ребро один раз, без петель (для отрисовки).
+     */
+    public double[] segments() {
+        double[] segments = new double[4 * edgeCount()];
+        int k = 0;
+        for (int v = 0; v < nodeCount(); v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                if (targets[e] > v) {
+                    segments[k++] = x(v);
+                    segments[k++] = y(v);
+                    segments[k++] = x(targets[e]);
+                    segments[k++] = y(targets[e]);
+                }
+            }
+        }
+        return Arrays.copyOf(segments, k);
+    }
+
+    /**
+     * Ближайший к точке узел (по евклидову расстоянию): корзины просматриваются кольцами,
+     * пока кольцо не станет дальше найденного узла.
+     */
+    public int nearest(double x, double y) {
+        int cx = clampCell((int) Math.floor((x - minX) / cellSize));
+        int cy = clampCell((int) Math.floor((y - minY) / cellSize));
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int ring = 0; ring < cells; ring++) {
+            if (best >= 0) {
+                // ближайшая точка кольца не ближе (ring - 1) корзин от точки
+                double gap = (ring - 1) * cellSize;
+                if (gap > 0 && gap * gap > bestDistance) break;
+            }
+            for (int gy = cy - ring; gy <= cy + ring; gy++) {
+                if (gy < 0 || gy >= cells) continue;
+                boolean edgeRow = gy == cy - ring || gy == cy + ring;
+                for (int gx = cx - ring; gx <= cx + ring; gx += edgeRow ? 1 : 2 * ring) {
+                    if (gx >= 0 && gx < cells) {
+                        int c = gy * cells + gx;
+                        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                            int v = cellNodes[k];
+                            double dx = x(v) - x, dy = y(v) - y;
+                            double d = dx * dx + dy * dy;
+                            if (d < bestDistance || (d == bestDistance && v < best)) {
+                                bestDistance = d;
+                                best = v;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Ближайшие узлы для точек {x0, y0, ...}; точки обрабатываются параллельно.
+     */
+    public int[] snap(double[] xy) {
+        return IntStream.range(0, xy.length / 2).parallel().map(r -> nearest(xy[2 * r], xy[2 * r + 1])).toArray();
+    }
+
+    /**
+     * Длины кратчайших путей от узла {@code source} до всех узлов (алгоритм Дейкстры на двоичной
+     * куче с уменьшением ключа); недостижимые узлы - {@code +inf}.
+     */
+    public double[] distances(int source) {
+        int n = nodeCount();
+        double[] dist = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] heap = new int[n];
+        int[] position = new int[n];
+        Arrays.fill(position, -1);
+        int size = 0;
+        dist[source] = 0;
+        heap[size] = source;
+        position[source] = size++;
+        while (size > 0) {
+            int v = heap[0];
+            position[v] = -2;
+            int last = heap[--size];
+            if (size > 0) {
+                heap[0] = last;
+                position[last] = 0;
+                siftDown(heap, position, dist, size, 0);
+            }
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                double candidate = dist[v] + lengths[e];
+                if (position[w] == -2 || candidate >= dist[w]) continue;
+                dist[w] = candidate;
+                if (position[w] < 0) {
+                    heap[size] = w;
+                    position[w] = size++;
+                }
+                siftUp(heap, position, dist, position[w]);
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Поля расстояний от нескольких узлов; источники обрабатываются параллельно.
+     */
+    public double[][] distances(int[] sources) {
+        return Arrays.stream(sources).parallel().mapToObj(this::distances).toArray(double[][]::new);
+    }
+
+    /**
+     * Рынок на сети: жители и фирмы привязываются к ближайшим узлам.
+     */
+    public Market market(double[] xy, double[] fx, double[] fy) {
+        int[] residentNodes = snap(xy);
+        int[] weight = new int[nodeCount()];
+        for (int node : residentNodes) {
+            weight[node]++;
+        }
+        int[] firmNodes = new int[fx.length];
+        for (int j = 0; j < fx.length; j++) {
+            firmNodes[j] = nearest(fx[j], fy[j]);
+        }
+        return new Market(this, weight, firmNodes, xy.length / 2);
+    }
+
+    private static void siftUp(int[] heap, int[] position, double[] key, int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (key[heap[parent]] <= key[v]) break;
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private static void siftDown(int[] heap, int[] position, double[] key, int size, int i) {
+        int v = heap[i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) child++;
+            if (key[heap[child]] >= key[v]) break;
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private int cellOf(double x, double y) {
+        int cx = clampCell((int) Math.floor((x - minX) / cellSize));
+        int cy = clampCell((int) Math.floor((y - minY) / cellSize));
+        return cy * cells + cx;
+    }
+
+    private int clampCell(int c) {
+        return Math.min(cells - 1, Math.max(0, c));
+    }
+
+    /**
+     * Рынок на сети: число жителей в каждом занятом узле и расстояния по сети от каждой фирмы
+     * до занятых узлов во {@code float} (4 байта на узел и фирму). Доли считаются по занятым
+     * узлам, так что стоимость вычисления не зависит от числа жителей. Безопасен для
+     * одновременного вызова из разных потоков.
+     */
+    public static final class Market {
+
+        /** Минимальное число занятых узлов, начиная с которого подсчёт долей распараллеливается. */
+        static final int PARALLEL_THRESHOLD = 1 << 12;
+
+        private static final int CHUNK = 1 << 11;
+
+        private final int[] nodes;
+        private final int[] weights;
+        private final float[][] distances;
+        /** Наибольшее конечное расстояние в таблице: по нему проверяется допуск совпадения издержек. */
+        private final double maxDistance;
+        private final int[] firmNodes;
+        private final int residentCount;
+
+        Market(RoadNetwork network, int[] weight, int[] firmNodes, int residentCount) {
+            this.nodes = IntStream.range(0, weight.length).filter(v -> weight[v] > 0).toArray();
+            this.weights = Arrays.stream(nodes).map(v -> weight[v]).toArray();
+            this.firmNodes = firmNodes;
+            this.residentCount = residentCount;
+            double[][] fields = network.distances(firmNodes);
+            this.distances = new float[firmNodes.length][nodes.length];
+            float max = 0;
+            for (int j = 0; j < firmNodes.length; j++) {
+                for (int m = 0; m < nodes.length; m++) {
+                    distances[j][m] = (float) fields[j][nodes[m]];
+                    if (distances[j][m] != Float.POSITIVE_INFINITY) max = Math.max(max, distances[j][m]);
+                }
+            }
+            this.maxDistance = max;
+        }
+
+        public int residentCount() {
+            return residentCount;
+        }
+
+        /** Число узлов, в которых есть жители. */
+        public int occupiedNodes() {
+            return nodes.length;
+        }
+
+        /** Узел, к которому привязана фирма. */
+        public int firmNode(int firm) {
+            return firmNodes[firm];
+        }
+
+        /** Расстояние по сети от фирмы до k-го занятого узла. */
+        public double distance(int firm, int k) {
+            return distances[firm][k];
+        }
+
+        /**
+         * Доли рынка: жители узла достаются всем фирмам с наименьшими издержками
+         * (в пределах {@link MarketKernel#FLOAT_TIE_TOLERANCE}, так как расстояния хранятся во
+         * {@code float}); недостижимые жители - никому.
+         *
+         * @throws IllegalArgumentException если при таких издержках допуск тоньше ошибки округления float
+         */
+        public int[] shares(double[] t, double[] prices) {
+            int f = prices.length;
+            double maxCost = 0;
+            for (int j = 0; j < f; j++) {
+                maxCost = Math.max(maxCost, Math.max(prices[j], HotellingDuopoly.MAX_PRICE) + t[j] * maxDistance);
+            }
+            MarketKernel.validateTieTolerance(MarketKernel.FLOAT_TIE_TOLERANCE, maxCost);
+            if (nodes.length < PARALLEL_THRESHOLD) {
+                int[] shares = new int[f];
+                shares(0, nodes.length, t, prices, shares);
+                return shares;
+            }
+            int chunks = (nodes.length + CHUNK - 1) / CHUNK;
+            return IntStream.range(0, chunks).parallel().mapToObj(c -> {
+                int[] part = new int[f];
+                shares(c * CHUNK, Math.min(nodes.length, (c + 1) * CHUNK), t, prices, part);
+                return part;
+            }).reduce(new int[f], (a, b) -> {
+                int[] sum = new int[f];
+                for (int i = 0; i < f; i++) {
+                    sum[i] = a[i] + b[i];
+                }
+                return sum;
+            });
+        }
+
+        public int share(int firm, double[] t, double[] prices) {
+            return shares(t, prices)[firm];
+        }
+
+        private void shares(int from, int to, double[] t, double[] prices, int[] out) {
+            int f = prices.length;
+            double[] cost = new double[f];
+            for (int m = from; m < to; m++) {
+                double min = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < f; j++) {
+                    cost[j] = prices[j] + t[j] * distances[j][m];
+                    if (cost[j] < min) min = cost[j];
+                }
+                for (int j = 0; j < f; j++) {
+                    if (cost[j] - min < MarketKernel.FLOAT_TIE_TOLERANCE) out[j] += weights[m];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.stream.IntStream;
+
+/**
+ * Процесс-шард: хранит жителей с номерами из [from, to) последовательности
+ * {@link ResidentGenerator} и отвечает на запросы долей рынка для пачек векторов цен.
+ * Слушает только loopback; после запуска печатает в stdout строку {@code READY <порт>}.
+ * <p>
+ * Протокол (DataInput/DataOutput, все числа big-endian):
+ * {@link #OP_FIRMS} f, затем f троек (x, y, t) и признак Manhattan;
+ * {@link #OP_SHARES} m, затем m векторов по f цен, ответ - m векторов по f долей;
+ * {@link #OP_CLOSE} завершает процесс.
+ */
+public class ShardWorker {
+
+    static final int OP_FIRMS = 1;
+    static final int OP_SHARES = 2;
+    static final int OP_CLOSE = 3;
+
+    private final double[] xy;
+    private double[] fx = new double[0];
+    private double[] fy = new double[0];
+    private double[] t = new double[0];
+    private boolean manhattan;
+
+    ShardWorker(double[] xy) {
+        this.xy = xy;
+    }
+
+    /**
+     * Аргументы: зерно, from, to, фигура, метрика.
+     */
+    public static void main(String[] args) throws IOException {
+        long seed = Long.parseLong(args[0]);
+        int from = Integer.parseInt(args[1]);
+        int to = Integer.parseInt(args[2]);
+        double[] xy = new double[(to - from) * 2];
+        ResidentGenerator.fill(seed, from, to, args[3], args[4], xy, 0);
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("READY " + server.getLocalPort());
+            System.out.flush();
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                new ShardWorker(xy).serve(
+                        new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+            }
+        }
+    }
+
+    void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int op;
+            try {
+                op = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (op == OP_FIRMS) {
+                int f = in.readInt();
+                fx = new double[f];
+                fy = new double[f];
+                t = new double[f];
+                for (int i = 0; i < f; i++) {
+                    fx[i] = in.readDouble();
+                    fy[i] = in.readDouble();
+                    t[i] = in.readDouble();
+                }
+                manhattan = in.readBoolean();
+            } else if (op == OP_SHARES) {
+                int m = in.readInt();
+                double[][] vectors = new double[m][fx.length];
+                for (double[] prices : vectors) {
+                    for (int i = 0; i < prices.length; i++) {
+                        prices[i] = in.readDouble();
+                    }
+                }
+                int[][] shares = IntStream.range(0, m).parallel()
+                        .mapToObj(k -> MarketKernel.shares(xy, fx, fy, t, vectors[k], manhattan))
+                        .toArray(int[][]::new);
+                for (int[] s : shares) {
+                    for (int count : s) {
+                        out.writeInt(count);
+                    }
+                }
+                out.flush();
+            } else if (op == OP_CLOSE) {
+                return;
+            } else {
+                throw new IOException("Неизвестная операция " + op);
+            }
+        }
+    }
+}
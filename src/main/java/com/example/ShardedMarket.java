@@ -0,0 +1,240 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Координатор шардированного рынка: жители разбиты между процессами {@link ShardWorker}
+ * на этой же машине, каждый отвечает за свой диапазон последовательности {@link ResidentGenerator}.
+ * Шарды генерируют своих жителей сами по зерну, поэтому по сети передаются только
+ * фирмы, векторы цен и итоговые доли. Запрос отправляется всем шардам сразу, и они
+ * считают параллельно; доли суммируются здесь. Пачка векторов цен обходится
+ * одним обменом сообщениями, что и использует {@link BatchedBestResponse}.
+ */
+public class ShardedMarket implements ShareOracle, AutoCloseable {
+
+    /** Сколько ждать строки готовности от всех шардов (включая генерацию их жителей). */
+    static final long STARTUP_TIMEOUT_MILLIS = 60_000;
+
+    private final List<Process> processes;
+    private final List<Socket> sockets;
+    private final List<DataInputStream> inputs = new ArrayList<>();
+    private final List<DataOutputStream> outputs = new ArrayList<>();
+    private final int count;
+    private int firmCount;
+
+    private ShardedMarket(List<Process> processes, List<Socket> sockets, int count) throws IOException {
+        this.processes = processes;
+        this.sockets = sockets;
+        this.count = count;
+        for (Socket socket : sockets) {
+            inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            outputs.add(new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+        }
+    }
+
+    /**
+     * Запускает {@code workers} процессов-шардов и делит между ними {@code count} жителей.
+     * Если шарды не сообщили о готовности за {@link #STARTUP_TIMEOUT_MILLIS}, процессы
+     * останавливаются и бросается {@link IOException}.
+     */
+    public static ShardedMarket launch(long seed, int count, String shape, String metric, int workers)
+            throws IOException {
+        return launch(seed, count, shape, metric, workers, STARTUP_TIMEOUT_MILLIS);
+    }
+
+    static ShardedMarket launch(long seed, int count, String shape, String metric, int workers,
+                                long startupTimeoutMillis) throws IOException {
+        List<Process> processes = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                int from = (int) ((long) count * w / workers);
+                int to = (int) ((long) count * (w + 1) / workers);
+                List<String> command = new ArrayList<>();
+                command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+                    command.add("--enable-preview");
+                }
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ShardWorker.class.getName());
+                command.add(Long.toString(seed));
+                command.add(Integer.toString(from));
+                command.add(Integer.toString(to));
+                command.add(shape);
+                command.add(metric);
+                processes.add(new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+            }
+            // строки готовности читаются в отдельных потоках, чтобы ожидание ограничивалось сроком;
+            // остановка процесса закрывает его stdout и завершает поток чтения
+            List<CompletableFuture<String>> ready = new ArrayList<>();
+            for (Process process : processes) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                CompletableFuture<String> line = new CompletableFuture<>();
+                Thread.ofVirtual().name("shard-startup").start(() -> {
+                    try {
+                        line.complete(reader.readLine());
+                    } catch (IOException e) {
+                        line.completeExceptionally(e);
+                    }
+                });
+                ready.add(line);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(startupTimeoutMillis);
+            for (CompletableFuture<String> future : ready) {
+                String line = readyLine(future, deadline, startupTimeoutMillis);
+                if (line == null || !line.startsWith("READY ")) {
+                    throw new IOException("Шард не запустился: " + line);
+                }
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(line.substring(6).trim()));
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+            }
+            return new ShardedMarket(processes, sockets, count);
+        } catch (IOException | RuntimeException e) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            processes.forEach(Process::destroyForcibly);
+            throw e;
+        }
+    }
+
+    private static String readyLine(CompletableFuture<String> line, long deadline, long timeoutMillis)
+            throws IOException {
+        try {
+            return line.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("Шард не запустился за " + timeoutMillis + " мс");
+        } catch (ExecutionException e) {
+            throw new IOException("Шард не запустился", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Запуск шардов прерван");
+        }
+    }
+
+    /**
+     * Общее число жителей во всех шардах.
+     */
+    public int count() {
+        return count;
+    }
+
+    public int workers() {
+        return processes.size();
+    }
+
+    /**
+     * Передаёт шардам расположение фирм и транспортные коэффициенты.
+     */
+    public synchronized void setFirms(double[] fx, double[] fy, double[] t, boolean manhattan) {
+        try {
+            for (DataOutputStream out : outputs) {
+                out.writeInt(ShardWorker.OP_FIRMS);
+                out.writeInt(fx.length);
+                for (int i = 0; i < fx.length; i++) {
+                    out.writeDouble(fx[i]);
+                    out.writeDouble(fy[i]);
+                    out.writeDouble(t[i]);
+                }
+                out.writeBoolean(manhattan);
+                out.flush();
+            }
+            firmCount = fx.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Доли рынка для пачки векторов цен за один обмен сообщениями с каждым шардом.
+     *
+     * @throws IllegalStateException    если фирмы ещё не переданы через {@link #setFirms}
+     * @throws IllegalArgumentException если длина вектора цен не равна числу фирм
+     */
+    @Override
+    public synchronized int[][] shares(double[][] priceVectors) {
+        if (firmCount == 0) {
+            throw new IllegalStateException("Фирмы не заданы: сначала вызовите setFirms");
+        }
+        // проверяем до записи в шарды, иначе протокол рассинхронизируется
+        for (int k = 0; k < priceVectors.length; k++) {
+            if (priceVectors[k].length != firmCount) {
+                throw new IllegalArgumentException("Вектор цен " + k + " длины " + priceVectors[k].length
+                        + ", фирм " + firmCount);
+            }
+        }
+        int[][] total = new int[priceVectors.length][firmCount];
+        try {
+            for (DataOutputStream out : outputs) {
+                out.writeInt(ShardWorker.OP_SHARES);
+                out.writeInt(priceVectors.length);
+                for (double[] prices : priceVectors) {
+                    for (double price : prices) {
+                        out.writeDouble(price);
+                    }
+                }
+                out.flush();
+            }
+            for (DataInputStream in : inputs) {
+                for (int[] shares : total) {
+                    for (int i = 0; i < firmCount; i++) {
+                        shares[i] += in.readInt();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total;
+    }
+
+    /**
+     * Останавливает шарды и ждёт завершения процессов.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (int w = 0; w < sockets.size(); w++) {
+            try {
+                outputs.get(w).writeInt(ShardWorker.OP_CLOSE);
+                outputs.get(w).flush();
+            } catch (IOException ignored) {
+                // шард уже завершился, процесс будет остановлен ниже
+            }
+            sockets.get(w).close();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * Источник долей рынка для пачки векторов цен. Позволяет решателю не знать, где лежат
+ * жители: в массиве текущего процесса или в шардах на других процессах.
+ */
+public interface ShareOracle {
+
+    /**
+     * Доли рынка всех фирм для каждого вектора цен: {@code result[k][i]} - доля фирмы i
+     * при ценах {@code priceVectors[k]}.
+     */
+    int[][] shares(double[][] priceVectors);
+
+    /**
+     * Оракул по жителям текущего процесса.
+     */
+    static ShareOracle local(double[] xy, double[] fx, double[] fy, double[] t, boolean manhattan) {
+        return priceVectors -> Arrays.stream(priceVectors).parallel()
+                .map(prices -> MarketKernel.shares(xy, fx, fy, t, prices, manhattan))
+                .toArray(int[][]::new);
+    }
+}
@@ -0,0 +1,535 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Локальный HTTP-сервис решателя для других программ на той же машине, без JavaFX.
+ * Слушает только loopback; каждый запрос обрабатывается в своём виртуальном потоке.
+ * <p>
+ * {@code POST /solve} принимает сценарий в JSON и возвращает цены, доли и прибыли:
+ * <pre>
+ * {"shape": "Square", "metric": "Euclidean", "residents": 1000, "seed": 42,
+ *  "firms": [[0.25, 0.5], [0.75, 0.5]], "prices": [1, 1], "t": 1.0,
+ *  "mode": "solve" | "profits", "maxIterations": 100, "tolPrice": 0.001}
+ * </pre>
+ * Режим {@code solve} ищет равновесие best-response dynamics со стартом из {@code prices},
+ * {@code profits} только оценивает прибыли при {@code prices}. Одинаковые сценарии, которые
+ * решаются в данный момент, объединяются в одно решение; готовые ответы хранятся в
+ * ограниченном LRU-кэше. Запросы {@code profits} к одному рынку копятся в течение
+ * {@link #setBatchWindowMillis окна} и оцениваются одной пачкой векторов цен.
+ * {@code GET /stats} возвращает счётчики.
+ */
+public class SolverService implements AutoCloseable {
+
+    /** Наибольшее число запросов в одной пачке оценки прибылей. */
+    static final int MAX_BATCH = 256;
+
+    /** Наибольшее число жителей в сценарии. */
+    static final int MAX_RESIDENTS = 10_000_000;
+
+    /** Наибольшее суммарное число жителей в кэшах рынков и жителей (каждый кэш отдельно). */
+    static final long MAX_CACHED_RESIDENTS = 2L * MAX_RESIDENTS;
+
+    /** Наибольшее число итераций решения. */
+    static final int MAX_ITERATIONS = 100_000;
+
+    private final HttpServer server;
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService solvers;
+    private final ScheduledExecutorService batchTimer;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final Lru<String, String> responses;
+    private final Lru<String, MarketEvaluator> markets = new Lru<>(MAX_CACHED_RESIDENTS, MarketEvaluator::residentCount);
+    private final Lru<String, double[]> residentCache = new Lru<>(MAX_CACHED_RESIDENTS, xy -> xy.length / 2);
+    /** Строящиеся рынки и жители: одновременные запросы одного ключа ждут одно построение. */
+    private final Map<String, CompletableFuture<MarketEvaluator>> buildingMarkets = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<double[]>> buildingResidents = new ConcurrentHashMap<>();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder solveCount = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder marketBuilds = new LongAdder();
+    private volatile long batchWindowMillis = 2;
+
+    private SolverService(int port, int cacheSize) throws IOException {
+        this.responses = new Lru<>(cacheSize);
+        this.solvers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemon("solver"));
+        this.batchTimer = Executors.newSingleThreadScheduledExecutor(daemon("profit-batch"));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requests);
+        server.createContext("/solve", this::handleSolve);
+        server.createContext("/stats", this::handleStats);
+        server.start();
+    }
+
+    /**
+     * Запускает сервис на порту {@code port} (0 - любой свободный) с кэшем на {@code cacheSize} ответов.
+     */
+    public static SolverService start(int port, int cacheSize) throws IOException {
+        return new SolverService(port, cacheSize);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Окно накопления пачки запросов оценки прибылей.
+     */
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public long solves() {
+        return solveCount.sum();
+    }
+
+    public long batches() {
+        return batchCount.sum();
+    }
+
+    /** Число построенных снимков рынка. */
+    public long marketBuilds() {
+        return marketBuilds.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        requests.shutdownNow();
+        solvers.shutdownNow();
+        batchTimer.shutdownNow();
+    }
+
+    private void handleSolve(HttpExchange exchange) throws IOException {
+        requestCount.increment();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, error("Ожидается POST"));
+                return;
+            }
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            try {
+                respond(exchange, 200, answer(Scenario.parse(body)));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error(e.getMessage()));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                int status = cause instanceof IllegalArgumentException ? 400 : 500;
+                respond(exchange, status, error(String.valueOf(cause.getMessage())));
+            }
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("requests", requestCount.sum());
+            stats.put("solves", solveCount.sum());
+            stats.put("cacheHits", cacheHits.sum());
+            stats.put("coalesced", coalesced.sum());
+            stats.put("batches", batchCount.sum());
+            stats.put("marketBuilds", marketBuilds.sum());
+            respond(exchange, 200, Json.write(stats));
+        }
+    }
+
+    /**
+     * Ответ на сценарий: из кэша, из уже идущего решения того же сценария или новым расчётом.
+     */
+    String answer(Scenario scenario) {
+        String key = scenario.key();
+        while (true) {
+            String cached = responses.get(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+            boolean[] created = new boolean[1];
+            CompletableFuture<String> future = inFlight.computeIfAbsent(key, k -> {
+                if (responses.get(k) != null) {
+                    // решение завершилось между проверкой кэша и этим вызовом
+                    return null;
+                }
+                created[0] = true;
+                return scenario.solve
+                        ? CompletableFuture.supplyAsync(() -> solve(scenario), solvers)
+                        : evaluateBatched(scenario);
+            });
+            if (future == null) {
+                continue;
+            }
+            if (created[0]) {
+                // обработчик вешается вне computeIfAbsent: готовая задача вызовет его сразу
+                future.whenComplete((result, e) -> {
+                    if (result != null) responses.put(key, result);
+                    inFlight.remove(key, future);
+                });
+            } else {
+                coalesced.increment();
+            }
+            return future.join();
+        }
+    }
+
+    private String solve(Scenario scenario) {
+        solveCount.increment();
+        MarketEvaluator market = market(scenario);
+        double[] prices = MarketKernel.bestResponseDynamics(residents(scenario), scenario.fx, scenario.fy,
+                scenario.t, scenario.prices, scenario.manhattan, scenario.tolPrice, scenario.maxIterations);
+        return result(prices, market.shares(prices));
+    }
+
+    /**
+     * Ставит оценку прибылей в пачку рынка сценария; первая заявка пачки запускает таймер окна.
+     */
+    private CompletableFuture<String> evaluateBatched(Scenario scenario) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        String marketKey = scenario.marketKey();
+        Batch[] full = new Batch[1];
+        batches.compute(marketKey, (k, batch) -> {
+            if (batch == null) {
+                Batch fresh = new Batch(scenario);
+                batchTimer.schedule(() -> flush(k, fresh), batchWindowMillis, TimeUnit.MILLISECONDS);
+                batch = fresh;
+            }
+            batch.prices.add(scenario.prices);
+            batch.futures.add(future);
+            if (batch.prices.size() >= MAX_BATCH) {
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (full[0] != null) {
+            solvers.execute(() -> evaluate(full[0]));
+        }
+        return future;
+    }
+
+    private void flush(String marketKey, Batch batch) {
+        if (batches.remove(marketKey, batch)) {
+            solvers.execute(() -> evaluate(batch));
+        }
+    }
+
+    private void evaluate(Batch batch) {
+        batchCount.increment();
+        try {
+            int[][] shares = market(batch.scenario).shares(batch.prices.toArray(new double[0][]));
+            for (int k = 0; k < shares.length; k++) {
+                batch.futures.get(k).complete(result(batch.prices.get(k), shares[k]));
+            }
+        } catch (RuntimeException e) {
+            batch.futures.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private MarketEvaluator market(Scenario scenario) {
+        return cached(markets, buildingMarkets, scenario.marketKey(), () -> {
+            marketBuilds.increment();
+            return MarketEvaluator.of(residents(scenario), scenario.fx, scenario.fy, scenario.t, scenario.manhattan);
+        });
+    }
+
+    private double[] residents(Scenario scenario) {
+        String key = scenario.shape + "|" + scenario.metric + "|" + scenario.residents + "|" + scenario.seed;
+        return cached(residentCache, buildingResidents, key, () ->
+                ResidentGenerator.uniform(scenario.seed, scenario.residents, scenario.shape, scenario.metric));
+    }
+
+    /**
+     * Значение из кэша; при промахе строит его один раз, как {@link #inFlight} для ответов:
+     * первый запрос ключа строит, одновременные запросы того же ключа ждут его результата.
+     */
+    private static <V> V cached(Lru<String, V> cache, Map<String, CompletableFuture<V>> building, String key,
+                                Supplier<V> build) {
+        V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<V> fresh = new CompletableFuture<>();
+        CompletableFuture<V> pending = building.putIfAbsent(key, fresh);
+        if (pending != null) {
+            return pending.join();
+        }
+        try {
+            // построение могло завершиться между проверкой кэша и захватом ключа
+            value = cache.get(key);
+            if (value == null) {
+                value = build.get();
+                cache.put(key, value);
+            }
+            fresh.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            fresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            building.remove(key, fresh);
+        }
+    }
+
+    private static String result(double[] prices, int[] shares) {
+        double[] profits = new double[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            profits[i] = prices[i] * shares[i];
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("prices", prices);
+        out.put("shares", shares);
+        out.put("profits", profits);
+        return Json.write(out);
+    }
+
+    private static String error(String message) {
+        return Json.write(Map.of("error", message));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Запуск отдельным процессом: {@code SolverService [порт] [размер кэша]}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8085;
+        int cacheSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        SolverService service = start(port, cacheSize);
+        System.out.println("Сервис решателя: http://localhost:" + service.port() + "/solve");
+    }
+
+    /**
+     * Проверенный сценарий запроса.
+     */
+    static final class Scenario {
+        final String shape;
+        final String metric;
+        final boolean manhattan;
+        final int residents;
+        final long seed;
+        final double[] fx;
+        final double[] fy;
+        final double[] t;
+        final double[] prices;
+        final boolean solve;
+        final int maxIterations;
+        final double tolPrice;
+
+        private Scenario(Map<?, ?> json) {
+            shape = string(json, "shape", "Square");
+            metric = string(json, "metric", "Euclidean");
+            if (!shape.equals("Square") && !shape.equals("Circle")) {
+                throw new IllegalArgumentException("Неизвестная форма: " + shape);
+            }
+            if (!metric.equals("Euclidean") && !metric.equals("Manhattan")) {
+                throw new IllegalArgumentException("Неизвестная метрика: " + metric);
+            }
+            manhattan = metric.equals("Manhattan");
+            residents = (int) integer(json, "residents", 1000, 1, MAX_RESIDENTS);
+            seed = (long) number(json, "seed", 0);
+            if (!(json.get("firms") instanceof List<?> firms) || firms.isEmpty()) {
+                throw new IllegalArgumentException("Нужен непустой массив firms: [[x, y], ...]");
+            }
+            int f = firms.size();
+            if (f > IncrementalMarket.MAX_FIRMS) {
+                throw new IllegalArgumentException("Не более " + IncrementalMarket.MAX_FIRMS + " фирм");
+            }
+            fx = new double[f];
+            fy = new double[f];
+            for (int i = 0; i < f; i++) {
+                double[] point = numbers(firms.get(i), "firms[" + i + "]");
+                if (point.length != 2) {
+                    throw new IllegalArgumentException("firms[" + i + "] должен быть [x, y]");
+                }
+                fx[i] = point[0];
+                fy[i] = point[1];
+            }
+            prices = json.containsKey("prices") ? numbers(json.get("prices"), "prices") : filled(f, 1.0);
+            t = json.get("t") instanceof List<?> ? numbers(json.get("t"), "t") : filled(f, number(json, "t", 1.0));
+            if (prices.length != f || t.length != f) {
+                throw new IllegalArgumentException("Длины prices и t должны совпадать с числом фирм");
+            }
+            String mode = string(json, "mode", "solve");
+            if (!mode.equals("solve") && !mode.equals("profits")) {
+                throw new IllegalArgumentException("Неизвестный режим: " + mode);
+            }
+            solve = mode.equals("solve");
+            maxIterations = (int) integer(json, "maxIterations", 100, 1, MAX_ITERATIONS);
+            tolPrice = number(json, "tolPrice", HotellingDuopoly.PRICE_TOLERANCE);
+            if (!(tolPrice > 0)) {
+                throw new IllegalArgumentException("tolPrice должно быть положительным");
+            }
+        }
+
+        static Scenario parse(String body) {
+            if (!(Json.parse(body) instanceof Map<?, ?> json)) {
+                throw new IllegalArgumentException("Сценарий должен быть объектом JSON");
+            }
+            return new Scenario(json);
+        }
+
+        /** Ключ рынка: жители и фирмы без цен. */
+        String marketKey() {
+            Map<String, Object> key = new LinkedHashMap<>();
+            key.put("shape", shape);
+            key.put("metric", metric);
+            key.put("residents", residents);
+            key.put("seed", seed);
+            key.put("fx", fx);
+            key.put("fy", fy);
+            key.put("t", t);
+            return Json.write(key);
+        }
+
+        /** Ключ сценария в каноническом виде: одинаковые сценарии дают одинаковый ключ. */
+        String key() {
+            Map<String, Object> key = new LinkedHashMap<>();
+            key.put("market", marketKey());
+            key.put("prices", prices);
+            key.put("solve", solve);
+            if (solve) {
+                key.put("maxIterations", maxIterations);
+                key.put("tolPrice", tolPrice);
+            }
+            return Json.write(key);
+        }
+
+        private static String string(Map<?, ?> json, String field, String fallback) {
+            Object value = json.get(field);
+            if (value == null) return fallback;
+            if (!(value instanceof String s)) throw new IllegalArgumentException(field + " должно быть строкой");
+            return s;
+        }
+
+        private static double number(Map<?, ?> json, String field, double fallback) {
+            Object value = json.get(field);
+            if (value == null) return fallback;
+            if (!(value instanceof Double d) || !Double.isFinite(d)) {
+                throw new IllegalArgumentException(field + " должно быть числом");
+            }
+            return d;
+        }
+
+        /** Целое число от {@code min} до {@code max}. */
+        private static double integer(Map<?, ?> json, String field, double fallback, double min, double max) {
+            double value = number(json, field, fallback);
+            if (value != Math.rint(value) || value < min || value > max) {
+                throw new IllegalArgumentException(field + " должно быть целым от " + (long) min + " до " + (long) max);
+            }
+            return value;
+        }
+
+        private static double[] numbers(Object value, String field) {
+            if (!(value instanceof List<?> list)) throw new IllegalArgumentException(field + " должно быть массивом");
+            double[] out = new double[list.size()];
+            for (int i = 0; i < out.length; i++) {
+                if (!(list.get(i) instanceof Double d) || !Double.isFinite(d)) {
+                    throw new IllegalArgumentException(field + " должно содержать только числа");
+                }
+                out[i] = d;
+            }
+            return out;
+        }
+
+        private static double[] filled(int n, double value) {
+            double[] out = new double[n];
+            Arrays.fill(out, value);
+            return out;
+        }
+    }
+
+    /**
+     * Заявки оценки прибылей на одном рынке.
+     */
+    private static final class Batch {
+        final Scenario scenario;
+        final List<double[]> prices = new ArrayList<>();
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+
+        Batch(Scenario scenario) {
+            this.scenario = scenario;
+        }
+    }
+
+    /**
+     * Ограниченный кэш с вытеснением давно не использованных записей. Ограничен суммарный вес
+     * записей (по умолчанию вес записи - единица); последняя добавленная запись не вытесняется.
+     */
+    private static final class Lru<K, V> {
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long capacity;
+        private final ToLongFunction<V> weigher;
+        private long weight;
+
+        Lru(int capacity) {
+            this(capacity, value -> 1);
+        }
+
+        Lru(long capacity, ToLongFunction<V> weigher) {
+            this.capacity = capacity;
+            this.weigher = weigher;
+        }
+
+        synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        synchronized void put(K key, V value) {
+            V old = map.put(key, value);
+            if (old != null) {
+                weight -= weigher.applyAsLong(old);
+            }
+            weight += weigher.applyAsLong(value);
+            Iterator<V> eldest = map.values().iterator();
+            while (weight > capacity && map.size() > 1) {
+                weight -= weigher.applyAsLong(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Поток снимков итераций решателя. Решатель вызывает {@link #publish} после каждой итерации
+ * и не ждёт подписчиков: снимок кладётся в кольцевой буфер последних {@code capacity} снимков
+ * и в ячейку "последний снимок" каждого подписчика. Доставка идёт на {@link Executor};
+ * медленный подписчик получает только самый свежий снимок из накопившихся (latest-wins),
+ * а пропущенные снимки остаются в {@link #history()}. Новый подписчик сразу получает последний
+ * снимок, если он есть.
+ */
+public class SolverTrace implements Flow.Publisher<SolverTrace.Snapshot> {
+
+    private final String solver;
+    private final Snapshot[] ring;
+    private long published;
+    private final Executor executor;
+    private final List<TraceSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile Snapshot latest;
+    private volatile boolean completed;
+
+    public SolverTrace(String solver, int capacity) {
+        this(solver, capacity, ForkJoinPool.commonPool());
+    }
+
+    public SolverTrace(String solver, int capacity, Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ёмкость буфера должна быть положительной: " + capacity);
+        }
+        this.solver = solver;
+        this.ring = new Snapshot[capacity];
+        this.executor = executor;
+    }
+
+    public String solver() {
+        return solver;
+    }
+
+    /**
+     * Публикует снимок итерации; не блокируется на подписчиках.
+     */
+    public void publish(Snapshot snapshot) {
+        synchronized (ring) {
+            ring[(int) (published++ % ring.length)] = snapshot;
+        }
+        latest = snapshot;
+        for (TraceSubscription subscription : subscriptions) {
+            subscription.offer(snapshot);
+        }
+    }
+
+    /**
+     * Завершает поток: подписчики получают последний снимок и {@code onComplete}.
+     */
+    public void complete() {
+        completed = true;
+        for (TraceSubscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /** Последние снимки в порядке публикации (не больше ёмкости буфера). */
+    public List<Snapshot> history() {
+        synchronized (ring) {
+            int size = (int) Math.min(published, ring.length);
+            List<Snapshot> history = new ArrayList<>(size);
+            for (long k = published - size; k < published; k++) {
+                history.add(ring[(int) (k % ring.length)]);
+            }
+            return history;
+        }
+    }
+
+    /** Последний снимок или null. */
+    public Snapshot latest() {
+        return latest;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Snapshot> subscriber) {
+        TraceSubscription subscription = new TraceSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        Snapshot last = latest;
+        if (last != null) {
+            subscription.offer(last);
+        } else {
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Подписка с одной ячейкой "последний снимок" и счётчиком запрошенных элементов.
+     */
+    private final class TraceSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Snapshot> subscriber;
+        private final AtomicReference<Snapshot> pending = new AtomicReference<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Throwable error;
+
+        TraceSubscription(Flow.Subscriber<? super Snapshot> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(Snapshot snapshot) {
+            pending.set(snapshot);
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Запрошено неположительное число элементов: " + n);
+            } else {
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done.set(true);
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Запускает доставку, если она ещё не идёт; повторные вызовы во время доставки
+         * учитываются счётчиком wip, и доставка делает ещё один проход.
+         */
+        void drain() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            int missed = 1;
+            while (!done.get()) {
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                if (demand.get() > 0) {
+                    Snapshot next = pending.getAndSet(null);
+                    if (next != null) {
+                        demand.decrementAndGet();
+                        subscriber.onNext(next);
+                        continue;
+                    }
+                }
+                if (completed && pending.get() == null) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Снимок итерации: цены, доли, наибольшее изменение цены за итерацию и число вычислений долей.
+     */
+    public static class Snapshot {
+        public final int iteration;
+        public final double[] prices;
+        public final int[] shares;
+        public final double maxDelta;
+        public final long evaluations;
+
+        public Snapshot(int iteration, double[] prices, int[] shares, double maxDelta, long evaluations) {
+            this.iteration = iteration;
+            this.prices = prices;
+            this.shares = shares;
+            this.maxDelta = maxDelta;
+            this.evaluations = evaluations;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class CapacitatedAssignmentTests {
+
+    // 1. Распределение совпадает с полным перебором назначений, в том числе при нехватке мест и с тёплым стартом
+    @Test
+    public void testMatchesBruteForce() {
+        Random rand = new Random(11);
+        for (int trial = 0; trial < 40; trial++) {
+            int n = 7, f = 3;
+            double[] xy = new double[2 * n];
+            for (int i = 0; i < xy.length; i++) {
+                xy[i] = rand.nextDouble();
+            }
+            double[] fx = new double[f], fy = new double[f], t = new double[f], prices = new double[f];
+            double[] capacity = new double[f];
+            for (int j = 0; j < f; j++) {
+                fx[j] = rand.nextDouble();
+                fy[j] = rand.nextDouble();
+                t[j] = 0.5 + rand.nextDouble();
+                prices[j] = 0.5 + rand.nextDouble();
+                capacity[j] = trial % 4 == 0 ? Double.POSITIVE_INFINITY : rand.nextInt(4);
+            }
+            boolean manhattan = trial % 2 == 1;
+            CapacitatedAssignment engine = new CapacitatedAssignment(xy, fx, fy, t, capacity, manhattan);
+            if (trial % 3 == 0) {
+                engine.setReservationCost(2.0);
+            }
+            double reservation = trial % 3 == 0 ? 2.0 : Double.POSITIVE_INFINITY;
+            int[] expected = bruteForce(xy, fx, fy, t, prices, capacity, manhattan, reservation);
+            CapacitatedAssignment.Assignment cold = engine.assign(prices, null);
+            Assert.assertEquals(cold.served, Arrays.copyOf(expected, f), "trial " + trial);
+            Assert.assertEquals(cold.unserved, expected[f], "trial " + trial);
+            for (int j = 0; j < f; j++) {
+                if (cold.served[j] < Math.min(capacity[j], n)) {
+                    Assert.assertEquals(cold.shadowPrices[j], 0.0, "trial " + trial);
+                }
+            }
+            double[] shifted = prices.clone();
+            shifted[trial % f] += 0.3;
+            CapacitatedAssignment.Assignment warm = engine.assign(shifted, cold.shadowPrices);
+            int[] expectedShifted = bruteForce(xy, fx, fy, t, shifted, capacity, manhattan, reservation);
+            Assert.assertEquals(warm.served, Arrays.copyOf(expectedShifted, f), "warm trial " + trial);
+        }
+    }
+
+    // 2. Миллион жителей: доли агрегированы по ячейкам, мощности соблюдены, тёплый старт дешевле холодного, решатель работает через MarketEvaluator, доли не зависят от порядка вызовов
+    @Test
+    public void testMillionResidentsWithCapacities() {
+        double[] xy = ResidentGenerator.uniform(21, 1_000_000, "Square", "Euclidean");
+        double[] fx = {0.2, 0.8, 0.5}, fy = {0.5, 0.5, 0.2}, t = {1, 1, 1};
+        double[] capacity = {300_000, Double.POSITIVE_INFINITY, 250_000};
+        CapacitatedAssignment engine = new CapacitatedAssignment(xy, fx, fy, t, capacity, false);
+        Assert.assertTrue(engine.groupCount() <= CapacitatedAssignment.AGGREGATION_GRID * CapacitatedAssignment.AGGREGATION_GRID);
+        double[] prices = {1.0, 1.0, 1.0};
+        CapacitatedAssignment.Assignment cold = engine.assign(prices, null);
+        Assert.assertEquals(cold.served[0] + cold.served[1] + cold.served[2] + cold.unserved, 1_000_000);
+        Assert.assertEquals(cold.unserved, 0);
+        Assert.assertTrue(cold.served[0] <= 300_000 && cold.served[2] <= 250_000);
+        Assert.assertEquals(cold.shadowPrices[1], 0.0);
+
+        double[] nudged = {1.0, 1.001, 1.0};
+        CapacitatedAssignment.Assignment warm = engine.assign(nudged, cold.shadowPrices);
+        CapacitatedAssignment.Assignment coldAgain = engine.assign(nudged, null);
+        Assert.assertEquals(warm.served, coldAgain.served);
+        Assert.assertTrue(warm.bids < coldAgain.bids, warm.bids + " vs " + coldAgain.bids);
+
+        MarketEvaluator market = MarketEvaluator.capacitated(xy, fx, fy, t, capacity, false);
+        double best = market.ternarySearchPrice(0, prices);
+        Assert.assertTrue(best >= HotellingDuopoly.MIN_PRICE && best <= HotellingDuopoly.MAX_PRICE);
+        Assert.assertTrue(market.share(0, MarketEvaluator.withPrice(prices, 0, best)) <= 300_000);
+
+        // доли зависят только от цен: параллельный расчёт в любом порядке совпадает с последовательным
+        MarketEvaluator warmMarket = market.warmStarted(prices);
+        double[][] grid = new double[8][];
+        for (int k = 0; k < grid.length; k++) {
+            grid[k] = MarketEvaluator.withPrice(prices, 0, 0.5 + 0.25 * k);
+        }
+        int[][] parallel = warmMarket.shares(grid);
+        for (int k = grid.length - 1; k >= 0; k--) {
+            Assert.assertEquals(warmMarket.shares(grid[k]), parallel[k], "price vector " + k);
+        }
+    }
+
+    // 3. Несогласованный тёплый старт (теневая цена у фирмы без ограничения) не ломает ε-масштабирование: итог совпадает с перебором
+    @Test
+    public void testInconsistentWarmStart() {
+        Random rand = new Random(5);
+        double[] xy = new double[2 * 7];
+        for (int i = 0; i < xy.length; i++) {
+            xy[i] = rand.nextDouble();
+        }
+        double[] fx = {0.2, 0.8, 0.5}, fy = {0.3, 0.6, 0.9}, t = {1, 1, 1}, prices = {1.0, 1.1, 0.9};
+        double[] capacity = {Double.POSITIVE_INFINITY, 2, 1};
+        CapacitatedAssignment engine = new CapacitatedAssignment(xy, fx, fy, t, capacity, false);
+        CapacitatedAssignment.Assignment assignment = engine.assign(prices, new double[]{5.0, 0, 0});
+        int[] expected = bruteForce(xy, fx, fy, t, prices, capacity, false, Double.POSITIVE_INFINITY);
+        Assert.assertEquals(assignment.served, Arrays.copyOf(expected, 3));
+        Assert.assertEquals(assignment.shadowPrices[0], 0.0);
+        Assert.assertTrue(assignment.bids < 10_000, "bids " + assignment.bids);
+    }
+
+    // 4. Тёплый старт, переданный из итерации в итерацию решателя, тратит меньше ставок, чем старт с базового снимка
+    @Test
+    public void testWarmStartCarriedAcrossIterations() {
+        double[] xy = ResidentGenerator.uniform(8, 200_000, "Square", "Euclidean");
+        double[] fx = {0.2, 0.8, 0.5}, fy = {0.5, 0.5, 0.2}, t = {1, 1, 1};
+        double[] capacity = {60_000, Double.POSITIVE_INFINITY, 50_000};
+        MarketEvaluator base = MarketEvaluator.capacitated(xy, fx, fy, t, capacity, false);
+        MarketEvaluator carried = MarketEvaluator.capacitated(xy, fx, fy, t, capacity, false);
+        double[] prices = {1.0, 1.0, 1.0};
+        long coldBids = 0, carriedBids = 0;
+        for (int iter = 0; iter < 6; iter++) {
+            prices = MarketEvaluator.withPrice(prices, iter % 3, prices[iter % 3] + 0.002);
+            long before = base.bids();
+            MarketEvaluator cold = base.warmStarted(prices);
+            coldBids += base.bids() - before;
+            before = carried.bids();
+            carried = carried.warmStarted(prices);
+            carriedBids += carried.bids() - before;
+            Assert.assertEquals(carried.shares(prices), cold.shares(prices), "iteration " + iter);
+        }
+        Assert.assertTrue(carriedBids < coldBids, carriedBids + " vs " + coldBids);
+    }
+
+    /**
+     * Оптимальные доли перебором всех назначений; последний элемент - число необслуженных.
+     */
+    private static int[] bruteForce(double[] xy, double[] fx, double[] fy, double[] t, double[] prices,
+                                    double[] capacity, boolean manhattan, double reservation) {
+        int n = xy.length / 2, f = fx.length;
+        double penalty = Double.isInfinite(reservation) ? 1e6 : reservation;
+        int[] choice = new int[n];
+        int[] best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        int total = (int) Math.pow(f + 1, n);
+        for (int code = 0; code < total; code++) {
+            int[] load = new int[f + 1];
+            double cost = 0;
+            int c = code;
+            for (int r = 0; r < n; r++) {
+                choice[r] = c % (f + 1);
+                c /= f + 1;
+                load[choice[r]]++;
+                cost += choice[r] == f ? penalty
+                        : prices[choice[r]] + t[choice[r]] * MarketKernel.distance(xy[2 * r], xy[2 * r + 1], fx[choice[r]], fy[choice[r]], manhattan);
+            }
+            boolean feasible = true;
+            for (int j = 0; j < f; j++) {
+                feasible &= load[j] <= capacity[j];
+            }
+            if (feasible && cost < bestCost) {
+                bestCost = cost;
+                best = load;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class CompactModeTests {
+
+    // 1. Доли рынка в одинарной точности совпадают с двойной на сценариях модельных тестов
+    @Test
+    public void testSharesMatchDoublePrecisionOnModelScenarios() {
+        double cx = 0.5, cy = 0.5, r = 0.4;
+        assertSharesMatch(firms(new double[][]{{0.0, 0.5}, {1.0, 0.5}}, 1.0, 1.0), generateLineResidents(), false);
+        assertSharesMatch(firms(new double[][]{{0.0, 0.5}, {1.0, 0.5}}, 0.5, 1.0), generateLineResidents(), false);
+        assertSharesMatch(firms(new double[][]{{0.0, 0.0}, {1.0, 1.0}}, 1.0, 1.0), generateUniformSquareResidents(1000, 42), true);
+        assertSharesMatch(firms(new double[][]{
+                {cx + r, cy}, {cx + r * Math.cos(2 * Math.PI / 3), cy + r * Math.sin(2 * Math.PI / 3)},
+                {cx + r * Math.cos(4 * Math.PI / 3), cy + r * Math.sin(4 * Math.PI / 3)}}, 1.0, 1.0, 1.0),
+                generateGridResidents(32, 32), false);
+        assertSharesMatch(firms(new double[][]{{0.25, 0.25}, {0.75, 0.25}, {0.25, 0.75}, {0.75, 0.75}}, 1.0, 1.0, 1.0, 1.0),
+                generateUniformSquareResidents(1000, 42), false);
+        assertSharesMatch(firms(new double[][]{{0.3, 0.5}, {0.7, 0.5}}, 1.0, 1.0), generateUniformCircleResidents(), true);
+        assertSharesMatch(firms(new double[][]{{0.5, 0.5}, {0.0, 0.0}, {1.0, 0.0}, {1.0, 1.0}, {0.0, 1.0}}, 1.0, 1.0, 1.0, 1.0, 1.0),
+                generateGridResidents(50, 50), false);
+        List<double[]> hexResidents = generateUniformSquareResidents(1000, 123);
+        double[][] hex = IntStream.range(0, 6)
+                .mapToObj(i -> new double[]{cx + r * Math.cos(2 * Math.PI * i / 6), cy + r * Math.sin(2 * Math.PI * i / 6)})
+                .toArray(double[][]::new);
+        assertSharesMatch(firms(hex, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0), hexResidents, true);
+        assertSharesMatch(firms(new double[][]{{0.4, 0.4}, {0.6, 0.6}}, 0.1, 10.0), hexResidents, false);
+    }
+
+    // 2. Прибыль, которую видят решатели через MarketEvaluator, в компактном режиме совпадает с двойной точностью
+    @Test
+    public void testSolverProfitMatchesDoublePrecision() {
+        List<double[]> residents = generateUniformSquareResidents(1000, 42);
+        List<Firm> firms = firms(new double[][]{{0.2, 0.5}, {0.8, 0.5}, {0.5, 0.9}}, 1.0, 1.3, 0.7);
+        double[] prices = MarketKernel.prices(firms);
+        double[] exact = new MarketEvaluator(firms, residents, "Euclidean").profits(prices);
+        double[] compact = MarketEvaluator.compact(MarketKernel.compact(MarketKernel.pack(residents)), MarketKernel.xs(firms),
+                MarketKernel.ys(firms), MarketKernel.transportCoefs(firms), false).profits(prices);
+        for (int i = 0; i < firms.size(); i++) {
+            Assert.assertEquals(compact[i], exact[i], prices[i] * 5, "Firm " + i + " profit");
+        }
+    }
+
+    // 3. Допуск проверяется относительно шага float при максимальных издержках
+    @Test
+    public void testTieToleranceValidation() {
+        MarketKernel.validateTieTolerance(MarketKernel.FLOAT_TIE_TOLERANCE,
+                MarketKernel.maxCost(new double[]{1.0, 1.0}, new double[]{1.0, 1.0}, true));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> MarketKernel.validateTieTolerance(1e-7f, 12.0));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> MarketKernel.validateTieTolerance(1e-3f, 12.0));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> MarketKernel.shares(new float[]{0.5f, 0.5f}, new double[]{0.0}, new double[]{0.0},
+                        new double[]{100.0}, new double[]{1.0}, true));
+    }
+
+    private void assertSharesMatch(List<Firm> firms, List<double[]> residents, boolean manhattan) {
+        double[] xy = MarketKernel.pack(residents);
+        double[] fx = MarketKernel.xs(firms), fy = MarketKernel.ys(firms);
+        double[] t = MarketKernel.transportCoefs(firms), prices = MarketKernel.prices(firms);
+        int[] exact = MarketKernel.shares(xy, fx, fy, t, prices, manhattan);
+        int[] compact = MarketKernel.shares(MarketKernel.compact(xy), fx, fy, t, prices, manhattan);
+        int allowed = Math.max(1, residents.size() / 200);
+        for (int i = 0; i < exact.length; i++) {
+            Assert.assertTrue(Math.abs(exact[i] - compact[i]) <= allowed,
+                    "Firm " + i + ": double " + exact[i] + " vs float " + compact[i]);
+            Assert.assertEquals(MarketKernel.share(i, MarketKernel.compact(xy), fx, fy, t, prices, manhattan), compact[i]);
+        }
+    }
+
+    private List<Firm> firms(double[][] positions, double... prices) {
+        List<Firm> firms = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            Firm f = new Firm(positions[i][0], positions[i][1], i);
+            f.price = prices[i];
+            f.transportCoef = 1.0;
+            firms.add(f);
+        }
+        return firms;
+    }
+
+    private List<double[]> generateLineResidents() {
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> new double[]{i / 999.0, 0.5})
+                .toList();
+    }
+
+    private List<double[]> generateGridResidents(int nx, int ny) {
+        return IntStream.range(0, nx)
+                .boxed()
+                .flatMap(i -> IntStream.range(0, ny)
+                        .mapToObj(j -> new double[]{i / (double) (nx - 1), j / (double) (ny - 1)}))
+                .toList();
+    }
+
+    private List<double[]> generateUniformSquareResidents(int count, long seed) {
+        Random rand = new Random(seed);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new double[]{rand.nextDouble(), rand.nextDouble()})
+                .toList();
+    }
+
+    private List<double[]> generateUniformCircleResidents() {
+        Random rand = new Random(42);
+        return IntStream.range(0, 1000)
+                .mapToObj(i -> {
+                    double r = Math.sqrt(rand.nextDouble()) * 0.5;
+                    double theta = rand.nextDouble() * 2 * Math.PI;
+                    return new double[]{0.5 + r * Math.cos(theta), 0.5 + r * Math.sin(theta)};
+                }).toList();
+    }
+}
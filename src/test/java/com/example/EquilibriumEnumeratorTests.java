@@ -0,0 +1,99 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class EquilibriumEnumeratorTests {
+
+    // 1. Для двух фирм найденные равновесия совпадают с полным перебором всех профилей
+    @Test
+    public void testTwoFirmsMatchNaiveSweep() {
+        double[] xy = ResidentGenerator.uniform(2, 150, "Square", "Euclidean");
+        double[] fx = {0.3, 0.7}, fy = {0.4, 0.6}, t = {1, 1};
+        List<int[]> enumerated = new EquilibriumEnumerator(xy, fx, fy, t, false).enumerateIndices();
+
+        int n = EquilibriumEnumerator.GRID_POINTS;
+        // best[i][k] - лучшие ответы фирмы i на цену k конкурента, по MarketKernel
+        boolean[][][] isBest = new boolean[2][n][];
+        for (int i = 0; i < 2; i++) {
+            final int firm = i;
+            isBest[i] = IntStream.range(0, n).parallel().mapToObj(k -> {
+                double[] profits = new double[n];
+                double max = 0;
+                for (int q = 0; q < n; q++) {
+                    double[] prices = new double[2];
+                    prices[firm] = EquilibriumEnumerator.gridPrice(q);
+                    prices[1 - firm] = EquilibriumEnumerator.gridPrice(k);
+                    profits[q] = prices[firm] * MarketKernel.share(firm, xy, fx, fy, t, prices, false);
+                    max = Math.max(max, profits[q]);
+                }
+                boolean[] flags = new boolean[n];
+                for (int q = 0; q < n; q++) flags[q] = profits[q] >= max - 1e-9;
+                return flags;
+            }).toArray(boolean[][]::new);
+        }
+        List<int[]> naive = new ArrayList<>();
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (isBest[0][b][a] && isBest[1][a][b]) naive.add(new int[]{a, b});
+            }
+        }
+        Assert.assertEquals(enumerated.size(), naive.size());
+        for (int k = 0; k < naive.size(); k++) {
+            Assert.assertEquals(enumerated.get(k), naive.get(k));
+        }
+    }
+
+    // 2. Для трёх фирм ветвление просматривает малую часть профилей, и ни одна фирма не выигрывает от отклонения по сетке
+    @Test
+    public void testThreeFirmsEquilibriaHaveNoProfitableDeviation() {
+        double[] xy = ResidentGenerator.uniform(5, 1000, "Square", "Euclidean");
+        double[] fx = {0.2, 0.8, 0.5}, fy = {0.2, 0.3, 0.8}, t = {1, 1, 1};
+        EquilibriumEnumerator enumerator = new EquilibriumEnumerator(xy, fx, fy, t, false);
+        List<double[]> equilibria = enumerator.enumerate();
+        Assert.assertTrue(enumerator.boxesVisited() < 100000, "Boxes " + enumerator.boxesVisited());
+        for (double[] prices : equilibria) {
+            for (int i = 0; i < 3; i++) {
+                double current = prices[i] * MarketKernel.share(i, xy, fx, fy, t, prices, false);
+                for (int q = 0; q < EquilibriumEnumerator.GRID_POINTS; q++) {
+                    double[] deviation = MarketEvaluator.withPrice(prices, i, EquilibriumEnumerator.gridPrice(q));
+                    Assert.assertTrue(deviation[i] * MarketKernel.share(i, xy, fx, fy, t, deviation, false) <= current + 1e-9);
+                }
+            }
+        }
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> new EquilibriumEnumerator(xy, new double[5], new double[5], new double[5], false));
+    }
+
+    // 3. Четыре фирмы: пара на отрезке и две фирмы-монополиста далеко от него. Равновесия - равновесия пары при верхней цене монополистов
+    @Test
+    public void testFourFirmsCombineIndependentMarkets() {
+        int line = 101, captive = 10;
+        double[] xy = new double[2 * (line + 2 * captive)];
+        for (int r = 0; r < line; r++) {
+            xy[2 * r] = r / (double) (line - 1);
+            xy[2 * r + 1] = 0.5;
+        }
+        for (int k = 0; k < captive; k++) {
+            xy[2 * (line + k)] = 100;
+            xy[2 * (line + captive + k)] = 200;
+            xy[2 * (line + k) + 1] = xy[2 * (line + captive + k) + 1] = 0.5;
+        }
+        List<int[]> pair = new EquilibriumEnumerator(Arrays.copyOf(xy, 2 * line), new double[]{0, 1}, new double[]{0.5, 0.5},
+                new double[]{1, 1}, false).enumerateIndices();
+        Assert.assertFalse(pair.isEmpty());
+
+        double[] fx = {0, 1, 100, 200}, fy = {0.5, 0.5, 0.5, 0.5}, t = {1, 1, 1, 1};
+        List<int[]> four = new EquilibriumEnumerator(xy, fx, fy, t, false).enumerateIndices();
+        int top = EquilibriumEnumerator.GRID_POINTS - 1;
+        Assert.assertEquals(four.size(), pair.size());
+        for (int k = 0; k < pair.size(); k++) {
+            Assert.assertEquals(four.get(k), new int[]{pair.get(k)[0], pair.get(k)[1], top, top});
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class EquilibriumSensitivityTests {
+
+    // 1. Производная цен по t совпадает с разностью повторных решений и с p / t (цены однородны по t)
+    @Test
+    public void testTransportSensitivityMatchesResolve() {
+        double[] xy = ResidentGenerator.uniform(7, 20000, "Square", "Euclidean");
+        double[] fx = {0.25, 0.75}, fy = {0.5, 0.5};
+        double[] prices = solve(xy, fx, fy, 1.0);
+
+        EquilibriumSensitivity sensitivity = new EquilibriumSensitivity(xy, fx, fy, new double[]{1, 1}, false, prices);
+        EquilibriumSensitivity.Result result = sensitivity.compute();
+        double[] dp = result.prices[result.indexOf("t")];
+
+        double[] up = solve(xy, fx, fy, 1.1);
+        double[] down = solve(xy, fx, fy, 0.9);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(dp[i], prices[i], 0.15 * prices[i], "Homogeneity, firm " + i);
+            Assert.assertEquals(dp[i], (up[i] - down[i]) / 0.2, 0.15 * prices[i], "Re-solve, firm " + i);
+            // при общем росте t растут и цены, и прибыли
+            Assert.assertTrue(result.profits[result.indexOf("t")][i] > 0);
+        }
+        Assert.assertEquals(result.prices[result.indexOf("maxPrice")], new double[]{0, 0});
+    }
+
+    // 2. Цены на верхней границе следуют за границей и не реагируют на остальные параметры
+    @Test
+    public void testBindingUpperBound() {
+        double[] xy = ResidentGenerator.uniform(8, 2000, "Square", "Euclidean");
+        double[] fx = {0.25, 0.75}, fy = {0.5, 0.5};
+        double[] prices = {HotellingDuopoly.MAX_PRICE, HotellingDuopoly.MAX_PRICE};
+        EquilibriumSensitivity.Result result = new EquilibriumSensitivity(xy, fx, fy, new double[]{40, 40}, false, prices)
+                .compute();
+        Assert.assertEquals(result.prices[result.indexOf("maxPrice")], new double[]{1, 1});
+        Assert.assertEquals(result.prices[result.indexOf("t1")], new double[]{0, 0});
+        Assert.assertEquals(result.slopes[0][1], 0.0);
+    }
+
+    // 3. Цена, остановленная решателем в пределах его точности от границы, считается лежащей на ней; при t = 0 шаг по t не нулевой
+    @Test
+    public void testSolverToleranceAndZeroTransportCost() {
+        double[] xy = ResidentGenerator.uniform(8, 2000, "Square", "Euclidean");
+        double[] fx = {0.25, 0.75}, fy = {0.5, 0.5};
+        double nearMax = HotellingDuopoly.MAX_PRICE - HotellingDuopoly.PRICE_TOLERANCE / 2;
+        EquilibriumSensitivity.Result bound = new EquilibriumSensitivity(xy, fx, fy, new double[]{40, 40}, false,
+                new double[]{nearMax, nearMax}).compute();
+        Assert.assertEquals(bound.prices[bound.indexOf("maxPrice")], new double[]{1, 1});
+
+        double[] prices = solve(xy, fx, fy, 1.0);
+        EquilibriumSensitivity.Result result = new EquilibriumSensitivity(xy, fx, fy, new double[]{0, 1}, false, prices)
+                .compute();
+        for (double derivative : result.prices[result.indexOf("t1")]) {
+            Assert.assertTrue(Double.isFinite(derivative), "dp/dt1 = " + derivative);
+        }
+    }
+
+    private double[] solve(double[] xy, double[] fx, double[] fy, double t) {
+        return MarketKernel.bestResponseDynamics(xy, fx, fy, new double[]{t, t}, new double[]{1, 1}, false, 1e-4, 50);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class IncrementalMarketTests {
+
+    // 1. После серии перемещений и смен цен доли совпадают с полным пересчётом
+    @Test
+    public void testIncrementalSharesMatchFullRecount() {
+        Random rand = new Random(9);
+        for (String metric : new String[]{"Euclidean", "Manhattan"}) {
+            boolean manhattan = metric.equals("Manhattan");
+            double[] xy = ResidentGenerator.uniform(4, 20000, "Square", metric);
+            double[] fx = {0.2, 0.8, 0.5, 0.5}, fy = {0.5, 0.5, 0.2, 0.8};
+            double[] t = {1, 1, 1, 1}, prices = {1, 1, 1, 1};
+            IncrementalMarket market = new IncrementalMarket(xy, fx, fy, t, prices, manhattan);
+            for (int step = 0; step < 200; step++) {
+                int firm = rand.nextInt(4);
+                if (step % 5 == 0) {
+                    prices[firm] = 0.5 + Math.round(rand.nextDouble() * 100) / 100.0;
+                    market.setPrice(firm, prices[firm]);
+                } else {
+                    // шаги по сетке 0.05 дают много точных совпадений издержек
+                    fx[firm] = Math.min(1, Math.max(0, fx[firm] + (rand.nextInt(3) - 1) * 0.05));
+                    fy[firm] = Math.min(1, Math.max(0, fy[firm] + (rand.nextInt(3) - 1) * 0.05));
+                    market.moveFirm(firm, fx[firm], fy[firm]);
+                }
+                Assert.assertEquals(market.shares(), MarketKernel.shares(xy, fx, fy, t, prices, manhattan),
+                        metric + ", step " + step);
+            }
+        }
+    }
+
+    // 2. Небольшое перемещение пересчитывает только жителей у границ рынка фирмы
+    @Test
+    public void testSmallMoveTouchesFewResidents() {
+        double[] xy = ResidentGenerator.uniform(6, 100000, "Square", "Euclidean");
+        double[] fx = {0.1, 0.3, 0.5, 0.7, 0.9}, fy = {0.5, 0.5, 0.5, 0.5, 0.5};
+        IncrementalMarket market = new IncrementalMarket(xy, fx, fy, new double[]{1, 1, 1, 1, 1},
+                new double[]{1, 1, 1, 1, 1}, false);
+        market.moveFirm(0, 0.11, 0.5);
+        Assert.assertTrue(market.lastTouched() < 100000 / 4, "Touched " + market.lastTouched());
+        int[] shares = market.shares();
+        Assert.assertEquals(shares[0] + shares[1] + shares[2] + shares[3] + shares[4], 100000);
+        Assert.assertTrue(market.owner(0) >= 0 && market.owner(0) < 5);
+    }
+}
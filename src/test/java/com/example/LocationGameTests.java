@@ -0,0 +1,123 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class LocationGameTests {
+
+    // 1. Однопроходный подсчёт долей совпадает с попарным сравнением издержек
+    @Test
+    public void testKernelSharesMatchPerFirmCount() {
+        List<Firm> firms = Arrays.asList(
+                new Firm(0.2, 0.3, 0),
+                new Firm(0.7, 0.6, 1),
+                new Firm(0.4, 0.9, 2)
+        );
+        firms.get(0).price = 1.0;
+        firms.get(1).price = 1.2;
+        firms.get(2).price = 0.8;
+        List<double[]> residents = generateUniformSquareResidents(2000, 7);
+        double[] xy = MarketKernel.pack(residents);
+
+        for (boolean manhattan : new boolean[]{false, true}) {
+            int[] shares = MarketKernel.shares(xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                    MarketKernel.transportCoefs(firms), MarketKernel.prices(firms), manhattan);
+            for (int i = 0; i < firms.size(); i++) {
+                int expected = countShare(firms.get(i), firms, residents, manhattan);
+                Assert.assertEquals(shares[i], expected, "Firm " + i + " share, manhattan=" + manhattan);
+                Assert.assertEquals(MarketKernel.share(i, xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                        MarketKernel.transportCoefs(firms), MarketKernel.prices(firms), manhattan), expected);
+            }
+        }
+    }
+
+    // 2. Фирма вдали от скопления жителей перемещается к нему и зарабатывает больше
+    @Test
+    public void testDistantFirmMovesTowardsDemand() {
+        List<double[]> residents = generateClusteredResidents(250, 0.3, 0.3, 0.1);
+        List<Firm> firms = Arrays.asList(new Firm(0.3, 0.3, 0), new Firm(0.95, 0.95, 1));
+        for (Firm f : firms) {
+            f.price = 1.0;
+            f.transportCoef = 1.0;
+        }
+        double[] xy = MarketKernel.pack(residents);
+        double[] before = MarketKernel.bestResponseDynamics(xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                MarketKernel.transportCoefs(firms), MarketKernel.prices(firms), false, 1e-3, 20);
+        double profitBefore = before[1] * MarketKernel.share(1, xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                MarketKernel.transportCoefs(firms), before, false);
+
+        LocationGame game = new LocationGame(residents, "Square", "Euclidean", 8);
+        game.setMaxPriceIterations(20);
+        game.solve(firms, 2);
+
+        Firm moved = firms.get(1);
+        double profitAfter = moved.price * MarketKernel.share(1, xy, MarketKernel.xs(firms), MarketKernel.ys(firms),
+                MarketKernel.transportCoefs(firms), MarketKernel.prices(firms), false);
+        Assert.assertTrue(Math.hypot(moved.x - 0.3, moved.y - 0.3) < Math.hypot(0.95 - 0.3, 0.95 - 0.3),
+                "Firm should move closer to the cluster");
+        Assert.assertTrue(profitAfter >= profitBefore, "Relocation should not decrease profit");
+        for (Firm f : firms) {
+            Assert.assertTrue(HotellingDuopoly.isInsideShape(f.x, f.y, "Square"));
+        }
+    }
+
+    // 3. Повторное решение из той же расстановки берёт равновесия из кэша
+    @Test
+    public void testInnerEquilibriaAreReused() {
+        List<double[]> residents = generateUniformSquareResidents(300, 11);
+        LocationGame game = new LocationGame(residents, "Circle", "Manhattan", 6);
+        List<Firm> first = Arrays.asList(new Firm(0.3, 0.5, 0), new Firm(0.7, 0.5, 1));
+        game.solve(first, 1);
+        int cached = game.cachedEquilibria();
+        Assert.assertTrue(cached > 0);
+
+        List<Firm> second = Arrays.asList(new Firm(0.3, 0.5, 0), new Firm(0.7, 0.5, 1));
+        game.solve(second, 1);
+        Assert.assertEquals(game.cachedEquilibria(), cached, "Same configuration should hit the cache");
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertEquals(second.get(i).x, first.get(i).x);
+            Assert.assertEquals(second.get(i).y, first.get(i).y);
+            Assert.assertEquals(second.get(i).price, first.get(i).price);
+        }
+    }
+
+    private int countShare(Firm firm, List<Firm> all, List<double[]> residents, boolean manhattan) {
+        int count = 0;
+        for (double[] r : residents) {
+            double minCost = Double.MAX_VALUE;
+            for (Firm f : all) {
+                double d = manhattan ? Math.abs(r[0] - f.x) + Math.abs(r[1] - f.y) : Math.hypot(r[0] - f.x, r[1] - f.y);
+                minCost = Math.min(minCost, f.price + f.transportCoef * d);
+            }
+            double selfD = manhattan ? Math.abs(r[0] - firm.x) + Math.abs(r[1] - firm.y) : Math.hypot(r[0] - firm.x, r[1] - firm.y);
+            if (firm.price + firm.transportCoef * selfD - minCost < 1e-9) count++;
+        }
+        return count;
+    }
+
+    private List<double[]> generateUniformSquareResidents(int count, long seed) {
+        Random rand = new Random(seed);
+        List<double[]> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(new double[]{rand.nextDouble(), rand.nextDouble()});
+        }
+        return list;
+    }
+
+    private List<double[]> generateClusteredResidents(int count, double cx, double cy, double sigma) {
+        Random rand = new Random(5);
+        List<double[]> list = new ArrayList<>();
+        while (list.size() < count) {
+            double x = cx + sigma * rand.nextGaussian();
+            double y = cy + sigma * rand.nextGaussian();
+            if (0 <= x && x <= 1 && 0 <= y && y <= 1) list.add(new double[]{x, y});
+        }
+        return list;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class LogitDemandTests {
+
+    private final double[] fx = {0.2, 0.8, 0.5};
+    private final double[] fy = {0.3, 0.4, 0.9};
+    private final double[] t = {1.0, 1.5, 1.0};
+
+    // 1. Аналитические градиент и якобиан совпадают с конечными разностями
+    @Test
+    public void testAnalyticDerivativesMatchFiniteDifferences() {
+        double[] xy = ResidentGenerator.uniform(1, 5000, "Square", "Euclidean");
+        LogitDemand model = new LogitDemand(xy, fx, fy, t, false, 0.2);
+        model.setOutsideCost(2.5);
+        double[] prices = {0.8, 1.1, 0.6};
+        double[] g = model.gradient(prices);
+        double[][] jac = model.jacobian(prices);
+        double h = 1e-5;
+        for (int j = 0; j < 3; j++) {
+            double[] up = model.profits(MarketEvaluator.withPrice(prices, j, prices[j] + h));
+            double[] down = model.profits(MarketEvaluator.withPrice(prices, j, prices[j] - h));
+            Assert.assertEquals(g[j], (up[j] - down[j]) / (2 * h), 1e-3 * Math.abs(g[j]) + 1e-3);
+            double[] gUp = model.gradient(MarketEvaluator.withPrice(prices, j, prices[j] + h));
+            double[] gDown = model.gradient(MarketEvaluator.withPrice(prices, j, prices[j] - h));
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(jac[i][j], (gUp[i] - gDown[i]) / (2 * h), 1e-3 * Math.abs(jac[i][j]) + 1e-2,
+                        "J[" + i + "][" + j + "]");
+            }
+        }
+    }
+
+    // 2. Метод Ньютона сходится за несколько итераций к точке, где ни одна фирма не выигрывает от отклонения
+    @Test
+    public void testNewtonConvergesToEquilibrium() {
+        double[] xy = ResidentGenerator.uniform(2, 20000, "Circle", "Manhattan");
+        LogitDemand model = new LogitDemand(xy, fx, fy, t, true, 0.1);
+        model.setOutsideCost(3.0);
+        LogitDemand.Solution solution = model.solve(new double[]{1, 1, 1});
+        Assert.assertTrue(solution.converged);
+        Assert.assertTrue(solution.iterations <= 10, "Iterations " + solution.iterations);
+        double[] profits = solution.profits();
+        for (int i = 0; i < 3; i++) {
+            for (double delta : new double[]{-0.01, 0.01}) {
+                double[] deviation = MarketEvaluator.withPrice(solution.prices, i, solution.prices[i] + delta);
+                Assert.assertTrue(model.profits(deviation)[i] < profits[i], "Firm " + i + ", delta " + delta);
+            }
+        }
+    }
+
+    // 3. При μ -> 0 спрос стремится к долям исходной модели, а при μ = 0 совпадает с ними; прерванное решение при μ = 0 не сходится
+    @Test
+    public void testHardAssignmentLimit() {
+        double[] xy = ResidentGenerator.uniform(3, 10000, "Square", "Euclidean");
+        double[] prices = {1.0, 0.9, 1.2};
+        int[] hard = MarketKernel.shares(xy, fx, fy, t, prices, false);
+        double[] limit = new LogitDemand(xy, fx, fy, t, false, 0).demand(prices);
+        double[] smooth = new LogitDemand(xy, fx, fy, t, false, 1e-3).demand(prices);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(limit[i], hard[i]);
+            Assert.assertEquals(smooth[i], hard[i], 0.01 * xy.length / 2);
+        }
+
+        LogitDemand model = new LogitDemand(xy, fx, fy, t, false, 0.2);
+        model.setMaxIterations(20);
+        LogitDemand.Solution[] path = model.continuation(new double[]{1, 1, 1}, 0.02);
+        Assert.assertEquals(path.length, 5);
+        Assert.assertTrue(path[0].converged && path[3].converged);
+        Assert.assertEquals(path[4].demand[0], MarketKernel.shares(xy, fx, fy, t, path[4].prices, false)[0], 0.0);
+
+        LogitDemand hardModel = new LogitDemand(xy, fx, fy, t, false, 0);
+        hardModel.setMaxIterations(1);
+        LogitDemand.Solution cut = hardModel.solve(new double[]{5, 5, 5});
+        Assert.assertFalse(cut.converged);
+        Assert.assertEquals(cut.iterations, 1);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class ManhattanIndexTests {
+
+    // 1. Доли по индексу совпадают с полным перебором, включая жителей на уличной сетке с ничьими
+    @Test
+    public void testSharesMatchKernel() {
+        Random rand = new Random(5);
+        for (String shape : new String[]{"Square", "Circle"}) {
+            double[] grid = ResidentGenerator.uniform(11, 100000, shape, "Manhattan");
+            double[] scattered = ResidentGenerator.uniform(12, 20000, shape, "Euclidean");
+            ManhattanIndex gridIndex = new ManhattanIndex(grid);
+            ManhattanIndex scatteredIndex = new ManhattanIndex(scattered);
+            for (int trial = 0; trial < 20; trial++) {
+                int f = 2 + trial % 4;
+                double[] fx = new double[f], fy = new double[f], t = new double[f], prices = new double[f];
+                for (int j = 0; j < f; j++) {
+                    fx[j] = Math.round(rand.nextDouble() * 20) / 20.0;
+                    fy[j] = Math.round(rand.nextDouble() * 20) / 20.0;
+                    t[j] = trial % 2 == 0 ? 1.0 : 0.5 + rand.nextDouble();
+                    prices[j] = trial % 3 == 0 ? 1.0 : 0.5 + Math.round(rand.nextDouble() * 100) / 100.0;
+                }
+                Assert.assertEquals(gridIndex.shares(fx, fy, t, prices),
+                        MarketKernel.shares(grid, fx, fy, t, prices, true), shape + " grid, trial " + trial);
+                Assert.assertEquals(scatteredIndex.shares(fx, fy, t, prices),
+                        MarketKernel.shares(scattered, fx, fy, t, prices, true), shape + " scattered, trial " + trial);
+            }
+        }
+    }
+
+    // 2. Таблица сумм считает жителей прямоугольника, а MarketEvaluator использует индекс для Manhattan
+    @Test
+    public void testRegionCountsAndEvaluator() {
+        double[] xy = ResidentGenerator.uniform(3, 50000, "Square", "Manhattan");
+        ManhattanIndex index = new ManhattanIndex(xy);
+        Assert.assertEquals(index.residentCount(), 50000);
+        int b = index.bins(), step = b / 4;
+        int total = 0;
+        for (int u = 0; u < b; u += step) {
+            for (int v = 0; v < b; v += step) {
+                total += index.count(u, u + step, v, v + step);
+            }
+        }
+        Assert.assertEquals(total, 50000);
+
+        double[] fx = {0.25, 0.75}, fy = {0.5, 0.5}, t = {1, 1};
+        MarketEvaluator market = MarketEvaluator.of(xy, fx, fy, t, true);
+        double[] prices = {1.0, 1.2};
+        Assert.assertEquals(market.shares(prices), MarketKernel.shares(xy, fx, fy, t, prices, true));
+        Assert.assertEquals(market.share(1, prices), MarketKernel.share(1, xy, fx, fy, t, prices, true));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class MarketEvaluatorTests {
+
+    // 1. Параллельные оценки разных векторов цен совпадают с последовательными
+    @Test
+    public void testConcurrentEvaluationsMatchSequential() {
+        List<Firm> firms = Arrays.asList(new Firm(0.2, 0.2, 0), new Firm(0.8, 0.3, 1), new Firm(0.5, 0.8, 2));
+        MarketEvaluator market = new MarketEvaluator(firms, generateUniformSquareResidents(2000), "Euclidean");
+        Random rand = new Random(3);
+        double[][] vectors = new double[64][];
+        for (int k = 0; k < vectors.length; k++) {
+            vectors[k] = new double[]{0.1 + rand.nextDouble() * 3, 0.1 + rand.nextDouble() * 3, 0.1 + rand.nextDouble() * 3};
+        }
+        double[][] sequential = Arrays.stream(vectors).map(market::profits).toArray(double[][]::new);
+        double[][] concurrent = IntStream.range(0, vectors.length).parallel()
+                .mapToObj(k -> IntStream.range(0, 3).mapToDouble(i -> market.profit(i, vectors[k])).toArray())
+                .toArray(double[][]::new);
+        Assert.assertEquals(concurrent, sequential);
+        Assert.assertEquals(market.shares(vectors)[5], market.shares(vectors[5]));
+    }
+
+    // 2. Снимок не зависит от последующих изменений фирм, а вектор цен не изменяется
+    @Test
+    public void testSnapshotIsImmutable() {
+        List<Firm> firms = Arrays.asList(new Firm(0.3, 0.5, 0), new Firm(0.7, 0.5, 1));
+        MarketEvaluator market = new MarketEvaluator(firms, generateUniformSquareResidents(1000), "Manhattan");
+        double[] prices = {1.0, 1.5};
+        double[] before = market.profits(prices);
+        market.ternarySearchPrice(0, prices);
+        market.isNashEquilibrium(prices, 1e-4);
+        firms.get(0).x = 0.9;
+        Assert.assertEquals(prices, new double[]{1.0, 1.5});
+        Assert.assertEquals(market.profits(prices), before);
+    }
+
+    // 3. Проверка Nash не оставляет фирмы на цене отклонения
+    @Test
+    public void testNashCheckDoesNotMutateFirms() throws Exception {
+        List<Firm> firms = Arrays.asList(new Firm(0.0, 0.5, 0), new Firm(1.0, 0.5, 1));
+        firms.get(0).price = 0.7;
+        firms.get(1).price = 4.0;
+        HotellingDuopoly app = new HotellingDuopoly();
+        app.firms = firms; app.residents = generateUniformSquareResidents(1000); app.metric = "Euclidean";
+        Method m = HotellingDuopoly.class.getDeclaredMethod("isNashEquilibrium");
+        m.setAccessible(true);
+
+        Assert.assertFalse((boolean) m.invoke(app));
+        Assert.assertEquals(firms.get(0).price, 0.7);
+        Assert.assertEquals(firms.get(1).price, 4.0);
+    }
+
+    private List<double[]> generateUniformSquareResidents(int count) {
+        Random rand = new Random(42);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new double[]{rand.nextDouble(), rand.nextDouble()})
+                .toList();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class OffHeapResidentsTests {
+
+    private static final double[] FX = {0.2, 0.7, 0.5};
+    private static final double[] FY = {0.3, 0.4, 0.9};
+    private static final double[] T = {1.0, 1.0, 1.5};
+    private static final double[] PRICES = {1.0, 1.1, 0.8};
+
+    // 1. Генерация вне кучи даёт тех же жителей, что и генерация в массив
+    @Test
+    public void testGeneratedMatchesHeapGenerator() {
+        int count = ResidentGenerator.CHUNK + 777;
+        double[] heap = ResidentGenerator.uniform(17, count, "Circle", "Euclidean");
+        try (OffHeapResidents residents = OffHeapResidents.generate(17, count, "Circle", "Euclidean")) {
+            Assert.assertEquals(residents.count(), count);
+            for (int i = 0; i < count; i += 997) {
+                Assert.assertEquals(residents.x(i), heap[2 * i]);
+                Assert.assertEquals(residents.y(i), heap[2 * i + 1]);
+            }
+        }
+    }
+
+    // 2. Ядро по сегменту считает те же доли, что и по массиву в куче
+    @Test
+    public void testKernelSharesMatchHeapArray() {
+        double[] heap = ResidentGenerator.uniform(3, MarketKernel.PARALLEL_THRESHOLD + 1000, "Square", "Manhattan");
+        try (OffHeapResidents residents = OffHeapResidents.copyOf(heap)) {
+            for (boolean manhattan : new boolean[]{false, true}) {
+                int[] expected = MarketKernel.shares(heap, FX, FY, T, PRICES, manhattan);
+                Assert.assertEquals(MarketKernel.shares(residents, FX, FY, T, PRICES, manhattan), expected);
+                for (int i = 0; i < FX.length; i++) {
+                    Assert.assertEquals(MarketKernel.share(i, residents, FX, FY, T, PRICES, manhattan), expected[i]);
+                }
+            }
+        }
+    }
+
+    // 3. Файл с жителями создаётся один раз и повторно открывается без генерации; файл с обрезанной записью отклоняется
+    @Test
+    public void testFileMappedRoundTrip() throws Exception {
+        Path file = Files.createTempFile("residents", ".bin");
+        try {
+            int[] expected;
+            try (OffHeapResidents created = OffHeapResidents.create(file, 5, 20000, "Square", "Euclidean")) {
+                expected = MarketKernel.shares(created, FX, FY, T, PRICES, false);
+            }
+            Assert.assertEquals(Files.size(file), 20000L * 2 * Double.BYTES);
+            try (OffHeapResidents opened = OffHeapResidents.open(file)) {
+                Assert.assertEquals(opened.count(), 20000);
+                Assert.assertEquals(MarketKernel.shares(opened, FX, FY, T, PRICES, false), expected);
+                Assert.assertEquals(expected, MarketKernel.shares(
+                        ResidentGenerator.uniform(5, 20000, "Square", "Euclidean"), FX, FY, T, PRICES, false));
+            }
+            // обрезанная запись жителя - не файл жителей
+            Files.write(file, new byte[20000 * 2 * Double.BYTES + 8]);
+            Assert.assertThrows(IOException.class, () -> OffHeapResidents.open(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // 4. После закрытия память освобождена и сегмент недоступен
+    @Test
+    public void testCloseReleasesSegment() {
+        OffHeapResidents residents = OffHeapResidents.allocate(10);
+        residents.close();
+        Assert.assertThrows(IllegalStateException.class, () -> residents.x(0));
+    }
+
+    // 5. Решатели работают по жителям вне кучи через MarketEvaluator и находят те же цены, что и по массиву
+    @Test
+    public void testSolverOverOffHeapEvaluator() {
+        double[] heap = ResidentGenerator.uniform(9, 30000, "Square", "Euclidean");
+        MarketEvaluator expected = MarketEvaluator.of(heap, FX, FY, T, false);
+        try (OffHeapResidents residents = OffHeapResidents.copyOf(heap)) {
+            MarketEvaluator market = MarketEvaluator.offHeap(residents, FX, FY, T, false);
+            Assert.assertEquals(market.residentCount(), 30000);
+            Assert.assertEquals(market.ternarySearchPrice(0, PRICES), expected.ternarySearchPrice(0, PRICES));
+            Assert.assertEquals(BatchedBestResponse.solve(market, PRICES, 1e-3, 20),
+                    BatchedBestResponse.solve(expected, PRICES, 1e-3, 20));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class OnlineMarketTests {
+
+    private final double[] fx = {0.2, 0.8, 0.5};
+    private final double[] fy = {0.5, 0.5, 0.1};
+    private final double[] t = {1, 1, 1};
+
+    // 1. После пачек добавлений и удалений доли совпадают с полным пересчётом по оставшимся жителям
+    @Test
+    public void testBatchesMatchFullRecount() {
+        OnlineMarket market = new OnlineMarket(fx, fy, t, new double[]{1.0, 1.2, 0.9}, true);
+        Random rand = new Random(4);
+        List<Integer> alive = new ArrayList<>();
+        for (int batch = 0; batch < 30; batch++) {
+            double[] points = ResidentGenerator.uniform(batch, 500, "Square", batch % 2 == 0 ? "Manhattan" : "Euclidean");
+            for (int handle : market.add(points)) alive.add(handle);
+            int[] leaving = new int[200];
+            for (int k = 0; k < leaving.length; k++) {
+                leaving[k] = alive.remove(rand.nextInt(alive.size()));
+            }
+            market.remove(leaving);
+            Assert.assertEquals(market.residentCount(), alive.size());
+            Assert.assertEquals(market.shares(), MarketKernel.shares(market.residents(), fx, fy, t,
+                    new double[]{1.0, 1.2, 0.9}, true), "Batch " + batch);
+        }
+        int gone = alive.get(0);
+        market.remove(new int[]{gone});
+        Assert.assertThrows(IllegalArgumentException.class, () -> market.remove(new int[]{gone}));
+    }
+
+    // 2. Цены пересчитываются только после заметного смещения долей
+    @Test
+    public void testLazyResolveOnDrift() {
+        OnlineMarket market = new OnlineMarket(fx, fy, t, new double[]{1, 1, 1}, false);
+        market.setDriftThreshold(0.05);
+        market.setMaxIterations(20);
+        market.add(ResidentGenerator.uniform(1, 5000, "Square", "Euclidean"));
+        double[] solved = market.prices();
+        Assert.assertEquals(market.solves(), 1);
+
+        // небольшое равномерное пополнение не сдвигает доли
+        market.add(ResidentGenerator.uniform(2, 200, "Square", "Euclidean"));
+        Assert.assertEquals(market.prices(), solved);
+        Assert.assertEquals(market.solves(), 1);
+
+        // наплыв жителей у первой фирмы сдвигает доли и запускает решение
+        double[] crowd = new double[2 * 2000];
+        for (int k = 0; k < 2000; k++) {
+            crowd[2 * k] = 0.2;
+            crowd[2 * k + 1] = 0.5;
+        }
+        market.add(crowd);
+        Assert.assertTrue(market.drift() > 0.05);
+        double[] resolved = market.prices();
+        Assert.assertEquals(market.solves(), 2);
+        Assert.assertFalse(Arrays.equals(resolved, solved));
+        Assert.assertEquals(market.drift(), 0.0);
+        Assert.assertEquals(market.shares(), MarketKernel.shares(market.residents(), fx, fy, t, resolved, false));
+    }
+
+    // 3. Ячейки удалённых жителей переиспользуются, устаревший дескриптор отклоняется
+    @Test
+    public void testHandlesAreRecycled() {
+        OnlineMarket market = new OnlineMarket(fx, fy, t, new double[]{1, 1, 1}, false);
+        int[] first = market.add(ResidentGenerator.uniform(1, 100, "Square", "Euclidean"));
+        for (int round = 0; round < 1000; round++) {
+            int[] handles = market.add(ResidentGenerator.uniform(round, 100, "Square", "Euclidean"));
+            for (int handle : handles) {
+                Assert.assertTrue((handle & ((1 << OnlineMarket.INDEX_BITS) - 1)) < 200, "Handle " + handle);
+            }
+            market.remove(handles);
+        }
+        market.remove(first);
+        Assert.assertEquals(market.residentCount(), 0);
+        int[] reused = market.add(new double[]{0.5, 0.5});
+        Assert.assertNotEquals(reused[0], first[first.length - 1]);
+        Assert.assertThrows(IllegalArgumentException.class, () -> market.remove(first));
+        Assert.assertEquals(market.residentCount(), 1);
+    }
+
+    // 4. Пачка удалений проверяется целиком: при ошибке рынок не меняется
+    @Test
+    public void testInvalidRemoveBatchLeavesMarketUnchanged() {
+        OnlineMarket market = new OnlineMarket(fx, fy, t, new double[]{1, 1, 1}, true);
+        int[] handles = market.add(ResidentGenerator.uniform(3, 50, "Square", "Manhattan"));
+        int[] shares = market.shares();
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> market.remove(new int[]{handles[0], handles[1], handles[0]}));
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> market.remove(new int[]{handles[2], -1}));
+        Assert.assertEquals(market.residentCount(), 50);
+        Assert.assertEquals(market.shares(), shares);
+        market.remove(handles);
+        Assert.assertEquals(market.residentCount(), 0);
+    }
+}
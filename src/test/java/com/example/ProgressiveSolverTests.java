@@ -0,0 +1,69 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ProgressiveSolverTests {
+
+    // 1. Этапы публикуются по порядку на растущих выборках, последний - на всём населении
+    @Test
+    public void testStagesGrowToFullPopulation() {
+        double[] xy = ResidentGenerator.uniform(8, 40000, "Square", "Euclidean");
+        ProgressiveSolver solver = new ProgressiveSolver(firms(), xy, "Euclidean", 1);
+        solver.setMaxIterations(20);
+        List<ProgressiveSolver.Estimate> published = new ArrayList<>();
+        ProgressiveSolver.Estimate last = solver.solve(new double[]{1.0, 1.0}, published::add);
+
+        Assert.assertEquals(published.size(), 3);
+        Assert.assertEquals(published.get(0).sampleSize, 400);
+        Assert.assertEquals(published.get(1).sampleSize, 4000);
+        Assert.assertSame(published.get(2), last);
+        Assert.assertTrue(last.isFinal());
+        Assert.assertEquals(last.population, 40000);
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(last.profitStdErrors[i], 0.0, 1e-9, "Full population has no sampling error");
+            Assert.assertTrue(published.get(0).profitStdErrors[i] > published.get(1).profitStdErrors[i]);
+            Assert.assertEquals(last.profits[i], last.prices[i] * last.shares[i], 1e-9);
+        }
+        int[] exact = MarketKernel.shares(xy, MarketKernel.xs(firms()), MarketKernel.ys(firms()),
+                MarketKernel.transportCoefs(firms()), last.prices, false);
+        Assert.assertEquals(last.shares[0], exact[0], 1e-9);
+        Assert.assertEquals(last.shares[1], exact[1], 1e-9);
+    }
+
+    // 2. Выборка стратифицирована: каждая ячейка представлена пропорционально
+    @Test
+    public void testSampleIsStratified() {
+        double[] xy = ResidentGenerator.uniform(4, 20000, "Circle", "Euclidean");
+        ProgressiveSolver solver = new ProgressiveSolver(firms(), xy, "Euclidean", 2);
+        double[] sample = solver.sample(0.1);
+        Assert.assertEquals(sample.length / 2, 2000);
+
+        int cells = ProgressiveSolver.STRATA * ProgressiveSolver.STRATA;
+        int[] population = countByCell(xy, cells);
+        int[] sampled = countByCell(sample, cells);
+        for (int c = 0; c < cells; c++) {
+            Assert.assertTrue(Math.abs(sampled[c] - population[c] * 0.1) <= 1.0, "Cell " + c);
+        }
+        Assert.assertTrue(Arrays.equals(sample, solver.sample(0.1)), "Sampling must be reproducible");
+    }
+
+    private int[] countByCell(double[] xy, int cells) {
+        int[] counts = new int[cells];
+        for (int i = 0; i < xy.length; i += 2) {
+            int cx = Math.min(ProgressiveSolver.STRATA - 1, (int) (xy[i] * ProgressiveSolver.STRATA));
+            int cy = Math.min(ProgressiveSolver.STRATA - 1, (int) (xy[i + 1] * ProgressiveSolver.STRATA));
+            counts[cy * ProgressiveSolver.STRATA + cx]++;
+        }
+        return counts;
+    }
+
+    private List<Firm> firms() {
+        return Arrays.asList(new Firm(0.25, 0.5, 0), new Firm(0.75, 0.5, 1));
+    }
+}
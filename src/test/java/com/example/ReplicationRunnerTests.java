@@ -0,0 +1,83 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ReplicationRunnerTests {
+
+    // 1. Онлайн-оценки Уэлфорда совпадают с двухпроходным расчётом
+    @Test
+    public void testOnlineStatsMatchTwoPass() {
+        Random rand = new Random(1);
+        double[] values = new double[500];
+        ReplicationRunner.OnlineStats stats = new ReplicationRunner.OnlineStats();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1e6 + rand.nextGaussian();
+            stats.add(values[i]);
+        }
+        double mean = Arrays.stream(values).average().orElseThrow();
+        double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum() / (values.length - 1);
+        Assert.assertEquals(stats.count(), values.length);
+        Assert.assertEquals(stats.mean(), mean, 1e-9);
+        Assert.assertEquals(stats.variance(), variance, 1e-6);
+        Assert.assertEquals(stats.halfWidth(ReplicationRunner.Z_95),
+                ReplicationRunner.Z_95 * Math.sqrt(variance / values.length), 1e-9);
+    }
+
+    // 2. Результат не зависит от числа потоков
+    @Test
+    public void testDeterministicRegardlessOfThreadCount() throws Exception {
+        ReplicationRunner.Result single = new ForkJoinPool(1).submit(() -> runner().run(20, 0.0)).get();
+        ReplicationRunner.Result many = new ForkJoinPool(6).submit(() -> runner().run(20, 0.0)).get();
+        Assert.assertEquals(single.replications, 20);
+        Assert.assertEquals(many.meanPrices, single.meanPrices);
+        Assert.assertEquals(many.priceHalfWidths, single.priceHalfWidths);
+        Assert.assertEquals(many.meanProfits, single.meanProfits);
+    }
+
+    // 3. Счёт останавливается, как только интервал достаточно узок
+    @Test
+    public void testStopsEarlyAtTargetWidth() {
+        ReplicationRunner.Result loose = runner().run(200, 10.0);
+        Assert.assertTrue(loose.converged);
+        Assert.assertEquals(loose.replications, ReplicationRunner.BATCH);
+
+        ReplicationRunner.Result strict = runner().run(32, 1e-9);
+        Assert.assertFalse(strict.converged);
+        Assert.assertEquals(strict.replications, 32);
+        for (int i = 0; i < strict.meanPrices.length; i++) {
+            Assert.assertTrue(strict.priceHalfWidths[i] > 0);
+            Assert.assertTrue(strict.meanPrices[i] >= HotellingDuopoly.MIN_PRICE
+                    && strict.meanPrices[i] <= HotellingDuopoly.MAX_PRICE);
+        }
+    }
+
+    // 4. Полуширина строится по квантилю Стьюдента: шире нормальной при малом числе репликаций и сходится к ней
+    @Test
+    public void testStudentQuantile() {
+        Assert.assertEquals(ReplicationRunner.t95(7), 2.364624, 1e-6);
+        Assert.assertEquals(ReplicationRunner.t95(31), 2.039513, 1e-6);
+        Assert.assertEquals(ReplicationRunner.t95(120), 1.979930, 1e-6);
+        Assert.assertTrue(ReplicationRunner.t95(30) > ReplicationRunner.t95(31));
+        Assert.assertEquals(ReplicationRunner.t95(1_000_000), ReplicationRunner.Z_95, 1e-5);
+
+        ReplicationRunner.OnlineStats stats = new ReplicationRunner.OnlineStats();
+        for (int i = 0; i < 8; i++) {
+            stats.add(i);
+        }
+        Assert.assertEquals(stats.halfWidth95(), 2.364624 * Math.sqrt(stats.variance() / 8), 1e-6);
+    }
+
+    private ReplicationRunner runner() {
+        List<Firm> firms = Arrays.asList(new Firm(0.3, 0.5, 0), new Firm(0.7, 0.5, 1));
+        ReplicationRunner runner = new ReplicationRunner(firms, "Square", "Euclidean", 300, 2025);
+        runner.setMaxIterations(20);
+        return runner;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ResidentGeneratorTests {
+
+    // 1. Одинаковое зерно даёт одинаковых жителей при любом числе потоков
+    @Test
+    public void testDeterministicRegardlessOfThreadCount() throws Exception {
+        int count = 3 * ResidentGenerator.CHUNK + 123;
+        double[] single = new ForkJoinPool(1)
+                .submit(() -> ResidentGenerator.uniform(42, count, "Circle", "Euclidean")).get();
+        double[] many = new ForkJoinPool(8)
+                .submit(() -> ResidentGenerator.uniform(42, count, "Circle", "Euclidean")).get();
+        double[] common = ResidentGenerator.uniform(42, count, "Circle", "Euclidean");
+
+        Assert.assertTrue(Arrays.equals(single, many), "Thread count must not change the output");
+        Assert.assertTrue(Arrays.equals(single, common));
+        Assert.assertFalse(Arrays.equals(single, ResidentGenerator.uniform(43, count, "Circle", "Euclidean")),
+                "Different seeds should give different residents");
+    }
+
+    // 2. Любой диапазон жителей генерируется отдельно и совпадает с полной выборкой
+    @Test
+    public void testRangeMatchesFullSequence() {
+        int count = 2 * ResidentGenerator.CHUNK + 500;
+        double[] full = ResidentGenerator.uniform(7, count, "Square", "Manhattan");
+        int from = ResidentGenerator.CHUNK - 100;
+        int to = 2 * ResidentGenerator.CHUNK + 50;
+        double[] part = new double[(to - from) * 2 + 4];
+        ResidentGenerator.fill(7, from, to, "Square", "Manhattan", part, 2);
+
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(part, 4, part.length),
+                Arrays.copyOfRange(full, 2 * from, 2 * to)));
+    }
+
+    // 3. Жители лежат внутри фигуры, а для Manhattan - на линиях уличной сетки
+    @Test
+    public void testResidentsInsideShapeAndOnGrid() {
+        double[] xy = ResidentGenerator.uniform(1, 5000, "Circle", "Manhattan");
+        for (int i = 0; i < xy.length; i += 2) {
+            double x = xy[i], y = xy[i + 1];
+            Assert.assertTrue(Math.hypot(x - 0.5, y - 0.5) <= 0.5 + 1e-12, "Resident outside the circle");
+            boolean onGrid = isGridLine(x) || isGridLine(y);
+            Assert.assertTrue(onGrid, "Resident " + i / 2 + " is off the street grid");
+        }
+        List<double[]> list = ResidentGenerator.toList(xy);
+        Assert.assertEquals(list.size(), 5000);
+        Assert.assertEquals(list.get(10)[1], xy[21]);
+    }
+
+    // 4. Случайные фирмы и цены воспроизводятся по зерну
+    @Test
+    public void testFirmsAndPricesReproducible() {
+        List<Firm> a = ResidentGenerator.randomFirms(99, "Square");
+        List<Firm> b = ResidentGenerator.randomFirms(99, "Square");
+        Assert.assertEquals(a.size(), b.size());
+        Assert.assertTrue(a.size() >= 2 && a.size() <= 6);
+        for (int i = 0; i < a.size(); i++) {
+            Assert.assertEquals(a.get(i).x, b.get(i).x);
+            Assert.assertEquals(a.get(i).y, b.get(i).y);
+        }
+        double[] prices = ResidentGenerator.randomPrices(5, 4);
+        Assert.assertTrue(Arrays.equals(prices, ResidentGenerator.randomPrices(5, 4)));
+        for (double p : prices) {
+            Assert.assertTrue(p >= 1 && p < 10);
+        }
+    }
+
+    private boolean isGridLine(double v) {
+        double scaled = v * ResidentGenerator.GRID_SIZE;
+        return Math.abs(scaled - Math.rint(scaled)) < 1e-12;
+    }
+}
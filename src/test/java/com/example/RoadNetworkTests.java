@@ -0,0 +1,125 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RoadNetworkTests {
+
+    // 1. На квадратной уличной сетке кратчайший путь равен манхэттенскому расстоянию, а ближайший узел - полному перебору
+    @Test
+    public void testStreetGridDistancesAndSnapping() {
+        RoadNetwork grid = RoadNetwork.streetGrid(20, "Square");
+        Assert.assertEquals(grid.nodeCount(), 441);
+        Assert.assertEquals(grid.edgeCount(), 2 * 20 * 21);
+        double[][] fields = grid.distances(new int[]{0, 220, 440});
+        for (int k = 0; k < fields.length; k++) {
+            int source = new int[]{0, 220, 440}[k];
+            for (int v = 0; v < grid.nodeCount(); v++) {
+                double manhattan = Math.abs(grid.x(v) - grid.x(source)) + Math.abs(grid.y(v) - grid.y(source));
+                Assert.assertEquals(fields[k][v], manhattan, 1e-9);
+            }
+        }
+
+        RoadNetwork circle = RoadNetwork.streetGrid(20, "Circle");
+        Random rand = new Random(3);
+        for (int trial = 0; trial < 2000; trial++) {
+            double x = rand.nextDouble() * 1.4 - 0.2, y = rand.nextDouble() * 1.4 - 0.2;
+            Assert.assertEquals(circle.nearest(x, y), bruteNearest(circle, x, y), "point " + x + ", " + y);
+        }
+        Assert.assertTrue(Arrays.stream(circle.distances(circle.nearest(0.5, 0.5))).allMatch(Double::isFinite));
+    }
+
+    // 2. Доли на случайной сети совпадают с перебором по матрице кратчайших путей (Флойд-Уоршелл), недостижимые жители не достаются никому, допуск float проверяется
+    @Test
+    public void testMarketSharesMatchBruteForce() {
+        Random rand = new Random(7);
+        int n = 60;
+        double[] nodeXy = new double[2 * n];
+        for (int i = 0; i < 2 * n; i++) {
+            nodeXy[i] = rand.nextDouble();
+        }
+        // узел n - 1 изолирован
+        int edges = 150;
+        int[] from = new int[edges + n - 2], to = new int[edges + n - 2];
+        for (int k = 0; k < n - 2; k++) {
+            from[k] = k;
+            to[k] = k + 1;
+        }
+        for (int k = n - 2; k < from.length; k++) {
+            from[k] = rand.nextInt(n - 1);
+            to[k] = rand.nextInt(n - 1);
+        }
+        RoadNetwork network = new RoadNetwork(nodeXy, from, to);
+
+        double[][] dist = new double[n][n];
+        for (double[] row : dist) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        for (int v = 0; v < n; v++) {
+            dist[v][v] = 0;
+        }
+        for (int k = 0; k < from.length; k++) {
+            double length = Math.hypot(nodeXy[2 * from[k]] - nodeXy[2 * to[k]], nodeXy[2 * from[k] + 1] - nodeXy[2 * to[k] + 1]);
+            dist[from[k]][to[k]] = Math.min(dist[from[k]][to[k]], length);
+            dist[to[k]][from[k]] = Math.min(dist[to[k]][from[k]], length);
+        }
+        for (int m = 0; m < n; m++) {
+            for (int a = 0; a < n; a++) {
+                for (int b = 0; b < n; b++) {
+                    dist[a][b] = Math.min(dist[a][b], dist[a][m] + dist[m][b]);
+                }
+            }
+        }
+        for (int j = 0; j < 3; j++) {
+            Assert.assertEquals(network.distances(j)[n - 1], Double.POSITIVE_INFINITY);
+        }
+
+        double[] xy = new double[2 * 5000];
+        for (int i = 0; i < xy.length; i++) {
+            xy[i] = rand.nextDouble();
+        }
+        xy[0] = nodeXy[2 * (n - 1)];
+        xy[1] = nodeXy[2 * (n - 1) + 1];
+        double[] fx = {0.2, 0.5, 0.8}, fy = {0.3, 0.7, 0.4}, t = {1, 1.5, 0.8};
+        RoadNetwork.Market market = network.market(xy, fx, fy);
+        MarketEvaluator evaluator = MarketEvaluator.road(market, fx, fy, t);
+        Assert.assertEquals(evaluator.residentCount(), 5000);
+        for (int trial = 0; trial < 20; trial++) {
+            double[] prices = {0.5 + rand.nextDouble(), 0.5 + rand.nextDouble(), 0.5 + rand.nextDouble()};
+            int[] expected = new int[3];
+            for (int r = 0; r < 5000; r++) {
+                int node = bruteNearest(network, xy[2 * r], xy[2 * r + 1]);
+                double[] cost = new double[3];
+                double min = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < 3; j++) {
+                    cost[j] = prices[j] + t[j] * dist[market.firmNode(j)][node];
+                    min = Math.min(min, cost[j]);
+                }
+                for (int j = 0; j < 3; j++) {
+                    if (cost[j] - min < MarketKernel.FLOAT_TIE_TOLERANCE) expected[j]++;
+                }
+            }
+            Assert.assertEquals(evaluator.shares(prices), expected, "trial " + trial);
+        }
+        // при таких издержках допуск float тоньше ошибки округления
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> market.shares(new double[]{1000, 1000, 1000}, new double[]{1, 1, 1}));
+    }
+
+    private static int bruteNearest(RoadNetwork network, double x, double y) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < network.nodeCount(); v++) {
+            double dx = network.x(v) - x, dy = network.y(v) - y;
+            double d = dx * dx + dy * dy;
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = v;
+            }
+        }
+        return best;
+    }
+}
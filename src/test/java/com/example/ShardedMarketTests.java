@@ -0,0 +1,61 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+public class ShardedMarketTests {
+
+    private static final double[] FX = {0.25, 0.75, 0.5};
+    private static final double[] FY = {0.5, 0.5, 0.1};
+    private static final double[] T = {1.0, 1.0, 1.0};
+
+    // 1. Сумма долей по шардам-процессам совпадает с подсчётом по всем жителям в одном процессе; неверные цены отклоняются, не ломая обмен с шардами
+    @Test
+    public void testShardedSharesMatchSingleProcess() throws Exception {
+        int count = 30000;
+        double[] xy = ResidentGenerator.uniform(11, count, "Circle", "Euclidean");
+        ShareOracle local = ShareOracle.local(xy, FX, FY, T, false);
+        double[][] batch = {{1.0, 1.0, 1.0}, {0.5, 2.0, 1.5}, {3.0, 0.2, 9.9}};
+
+        try (ShardedMarket market = ShardedMarket.launch(11, count, "Circle", "Euclidean", 3)) {
+            Assert.assertEquals(market.workers(), 3);
+            Assert.assertThrows(IllegalStateException.class, () -> market.shares(batch));
+            market.setFirms(FX, FY, T, false);
+            Assert.assertThrows(IllegalArgumentException.class, () -> market.shares(new double[][]{{1.0, 1.0, 1.0}, {1.0, 1.0}}));
+            Assert.assertEquals(market.shares(batch), local.shares(batch));
+
+            market.setFirms(FX, FY, T, true);
+            Assert.assertEquals(market.shares(batch), ShareOracle.local(xy, FX, FY, T, true).shares(batch));
+        }
+    }
+
+    // 2. Best response по шардам даёт те же цены, что и по жителям в одном процессе
+    @Test
+    public void testBestResponseOverShards() throws Exception {
+        int count = 4000;
+        double[] xy = ResidentGenerator.uniform(2, count, "Square", "Euclidean");
+        double[] start = {1.0, 1.0, 1.0};
+        double[] expected = BatchedBestResponse.solve(ShareOracle.local(xy, FX, FY, T, false), start, 1e-3, 20);
+
+        try (ShardedMarket market = ShardedMarket.launch(2, count, "Square", "Euclidean", 2)) {
+            market.setFirms(FX, FY, T, false);
+            double[] prices = BatchedBestResponse.solve(market, start, 1e-3, 20);
+            Assert.assertEquals(prices, expected);
+            for (double p : prices) {
+                Assert.assertTrue(p >= HotellingDuopoly.MIN_PRICE && p <= HotellingDuopoly.MAX_PRICE);
+            }
+        }
+    }
+
+    // 3. Шарды, не сообщившие о готовности в срок, останавливаются, а запуск завершается ошибкой
+    @Test
+    public void testStartupTimeoutKillsWorkers() throws Exception {
+        Assert.assertThrows(IOException.class, () -> ShardedMarket.launch(3, 1000, "Square", "Euclidean", 2, 1));
+        for (ProcessHandle child : ProcessHandle.current().children().toList()) {
+            child.onExit().get(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+public class SolverServiceTests {
+
+    private static final String SCENARIO = "{\"shape\": \"Square\", \"metric\": \"Euclidean\", \"residents\": 5000, "
+            + "\"seed\": 3, \"firms\": [[0.25, 0.5], [0.75, 0.5]], \"prices\": [1, 1], \"maxIterations\": 20%s}";
+
+    // 1. Одинаковые одновременные запросы решаются один раз и получают одинаковый ответ
+    @Test
+    public void testIdenticalRequestsAreCoalesced() throws Exception {
+        try (SolverService service = SolverService.start(0, 16)) {
+            HttpClient client = HttpClient.newHttpClient();
+            List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, 32)
+                    .mapToObj(i -> client.sendAsync(post(service, String.format(SCENARIO, "")),
+                            HttpResponse.BodyHandlers.ofString()))
+                    .toList();
+            String first = responses.get(0).join().body();
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                Assert.assertEquals(response.join().statusCode(), 200);
+                Assert.assertEquals(response.join().body(), first);
+            }
+            Assert.assertEquals(service.solves(), 1);
+
+            Map<?, ?> result = (Map<?, ?>) Json.parse(first);
+            double[] xy = ResidentGenerator.uniform(3, 5000, "Square", "Euclidean");
+            double[] expected = MarketKernel.bestResponseDynamics(xy, new double[]{0.25, 0.75}, new double[]{0.5, 0.5},
+                    new double[]{1, 1}, new double[]{1, 1}, false, 1e-3, 20);
+            List<?> prices = (List<?>) result.get("prices");
+            Assert.assertEquals((Double) prices.get(0), expected[0], 1e-12);
+            Assert.assertEquals((Double) prices.get(1), expected[1], 1e-12);
+
+            HttpResponse<String> bad = client.send(post(service, "{\"firms\": []}"), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(bad.statusCode(), 400);
+            Assert.assertTrue(bad.body().contains("error"));
+            for (String invalid : List.of("\"residents\": 1000.5", "\"maxIterations\": 0", "\"tolPrice\": -1")) {
+                String body = "{\"firms\": [[0.25, 0.5], [0.75, 0.5]], " + invalid + "}";
+                Assert.assertEquals(client.send(post(service, body), HttpResponse.BodyHandlers.ofString()).statusCode(), 400, invalid);
+            }
+        }
+    }
+
+    // 2. Оценки прибылей к одному рынку собираются в пачки и совпадают с прямым расчётом
+    @Test
+    public void testProfitRequestsAreBatched() throws Exception {
+        try (SolverService service = SolverService.start(0, 256)) {
+            service.setBatchWindowMillis(200);
+            HttpClient client = HttpClient.newHttpClient();
+            List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, 40)
+                    .mapToObj(i -> client.sendAsync(post(service, String.format(SCENARIO.replace("[1, 1]", "[%s, 1]"),
+                                    1 + i * 0.05, ", \"mode\": \"profits\"")), HttpResponse.BodyHandlers.ofString()))
+                    .toList();
+            double[] xy = ResidentGenerator.uniform(3, 5000, "Square", "Euclidean");
+            MarketEvaluator market = MarketEvaluator.of(xy, new double[]{0.25, 0.75}, new double[]{0.5, 0.5},
+                    new double[]{1, 1}, false);
+            for (int i = 0; i < responses.size(); i++) {
+                Map<?, ?> result = (Map<?, ?>) Json.parse(responses.get(i).join().body());
+                double[] profits = market.profits(new double[]{1 + i * 0.05, 1});
+                Assert.assertEquals((Double) ((List<?>) result.get("profits")).get(0), profits[0], 1e-9);
+            }
+            Assert.assertTrue(service.batches() < 40, "Batches " + service.batches());
+            Assert.assertEquals(service.solves(), 0);
+        }
+    }
+
+    // 3. Разные сценарии одного рынка строят снимок рынка один раз; слишком глубокий JSON отклоняется с кодом 400
+    @Test
+    public void testMarketBuiltOnceAndDeepJsonRejected() throws Exception {
+        try (SolverService service = SolverService.start(0, 64)) {
+            HttpClient client = HttpClient.newHttpClient();
+            List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, 16)
+                    .mapToObj(i -> client.sendAsync(post(service, String.format(SCENARIO.replace("[1, 1]", "[%s, 1]"),
+                            1 + i * 0.1, "")), HttpResponse.BodyHandlers.ofString()))
+                    .toList();
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                Assert.assertEquals(response.join().statusCode(), 200);
+            }
+            Assert.assertEquals(service.solves(), 16);
+            Assert.assertEquals(service.marketBuilds(), 1);
+
+            String deep = "[".repeat(100_000) + "]".repeat(100_000);
+            HttpResponse<String> rejected = client.send(post(service, "{\"firms\": " + deep + "}"),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(rejected.statusCode(), 400);
+            Assert.assertTrue(rejected.body().contains("вложенность"), rejected.body());
+        }
+        Assert.assertThrows(IllegalArgumentException.class,
+                () -> Json.parse("[".repeat(Json.MAX_DEPTH + 1) + "]".repeat(Json.MAX_DEPTH + 1)));
+        Assert.assertEquals(Json.write(Json.parse("[".repeat(Json.MAX_DEPTH) + "]".repeat(Json.MAX_DEPTH))),
+                "[".repeat(Json.MAX_DEPTH) + "]".repeat(Json.MAX_DEPTH));
+    }
+
+    private static HttpRequest post(SolverService service, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + service.port() + "/solve"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example;
+
+import com.example.HotellingDuopoly.Firm;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+public class SolverTraceTests {
+
+    // 1. Решатель публикует снимок каждой итерации в подключённый поток, последний снимок - итоговые цены; после решения поток отключается
+    @Test
+    public void testSolverPublishesIterations() throws Exception {
+        HotellingDuopoly app = new HotellingDuopoly();
+        app.firms = Arrays.asList(new Firm(0.25, 0.5, 0), new Firm(0.75, 0.5, 1));
+        app.residents = ResidentGenerator.toList(ResidentGenerator.uniform(1, 2000, "Square", "Euclidean"));
+        app.metric = "Euclidean";
+        SolverTrace trace = new SolverTrace("Ternary Search", 8);
+        app.setTrace(trace);
+        Method m = HotellingDuopoly.class.getDeclaredMethod("ternarySearchNash");
+        m.setAccessible(true);
+        m.invoke(app);
+
+        List<SolverTrace.Snapshot> history = trace.history();
+        SolverTrace.Snapshot last = trace.latest();
+        Assert.assertFalse(history.isEmpty());
+        Assert.assertTrue(history.size() <= 8);
+        Assert.assertSame(history.get(history.size() - 1), last);
+        Assert.assertNull(app.trace, "Trace is detached after the solve");
+        Assert.assertEquals(last.prices, new double[]{app.firms.get(0).price, app.firms.get(1).price});
+        Assert.assertTrue(last.shares[0] + last.shares[1] >= 2000, "Ties count for both firms");
+        for (int k = 1; k < history.size(); k++) {
+            Assert.assertEquals(history.get(k).iteration, history.get(k - 1).iteration + 1);
+            Assert.assertTrue(history.get(k).evaluations > history.get(k - 1).evaluations);
+        }
+    }
+
+    // 2. Медленный подписчик получает свежайший снимок, а не очередь всех, и затем завершение
+    @Test
+    public void testSlowSubscriberGetsLatest() throws Exception {
+        SolverTrace trace = new SolverTrace("test", 16);
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch firstDelivered = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+        trace.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(SolverTrace.Snapshot item) {
+                received.add(item.iteration);
+                firstDelivered.countDown();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                Assert.fail("Unexpected error", throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        trace.publish(new SolverTrace.Snapshot(0, new double[]{1}, new int[]{1}, 0, 0));
+        Assert.assertTrue(firstDelivered.await(5, TimeUnit.SECONDS));
+        for (int k = 1; k < 1000; k++) {
+            trace.publish(new SolverTrace.Snapshot(k, new double[]{1}, new int[]{1}, 0, k));
+        }
+        trace.complete();
+        Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(received.size() < 10, "Received " + received.size());
+        Assert.assertEquals((int) received.get(received.size() - 1), 999);
+        Assert.assertEquals(trace.history().size(), 16);
+        Assert.assertEquals(trace.history().get(0).iteration, 984);
+    }
+}